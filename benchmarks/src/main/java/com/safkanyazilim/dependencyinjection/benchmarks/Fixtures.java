@@ -0,0 +1,130 @@
+package com.safkanyazilim.dependencyinjection.benchmarks;
+
+import com.safkanyazilim.dependencyinjection.Dependency;
+import com.safkanyazilim.dependencyinjection.Initializer;
+import com.safkanyazilim.dependencyinjection.Pooled;
+import com.safkanyazilim.dependencyinjection.Reset;
+import com.safkanyazilim.dependencyinjection.Singleton;
+
+/**
+ * The classes injected and instantiated by the benchmarks.
+ */
+public abstract class Fixtures {
+
+	@Singleton
+	public static class SingletonService {
+		private int initializations;
+
+		@Initializer
+		public void initialize() {
+			this.initializations++;
+		}
+	}
+
+	public static class PrototypeService {
+		@Dependency
+		public SingletonService singletonService;
+	}
+
+	@Pooled
+	public static class PooledHandler {
+		@Dependency
+		public SingletonService singletonService;
+
+		private int handled;
+
+		@Reset
+		public void reset() {
+			this.handled = 0;
+		}
+	}
+
+	/*
+	 * A deep graph: each level depends on the next one, ten levels deep.
+	 */
+
+	public static class Deep0 { @Dependency public Deep1 next; }
+	public static class Deep1 { @Dependency public Deep2 next; }
+	public static class Deep2 { @Dependency public Deep3 next; }
+	public static class Deep3 { @Dependency public Deep4 next; }
+	public static class Deep4 { @Dependency public Deep5 next; }
+	public static class Deep5 { @Dependency public Deep6 next; }
+	public static class Deep6 { @Dependency public Deep7 next; }
+	public static class Deep7 { @Dependency public Deep8 next; }
+	public static class Deep8 { @Dependency public Deep9 next; }
+	public static class Deep9 { @Dependency public SingletonService service; }
+
+	/*
+	 * A wide graph: one object with ten prototype dependencies.
+	 */
+
+	public static class Leaf {
+		@Dependency
+		public SingletonService service;
+	}
+
+	public static class Wide {
+		@Dependency public Leaf leaf0;
+		@Dependency public Leaf leaf1;
+		@Dependency public Leaf leaf2;
+		@Dependency public Leaf leaf3;
+		@Dependency public Leaf leaf4;
+		@Dependency public Leaf leaf5;
+		@Dependency public Leaf leaf6;
+		@Dependency public Leaf leaf7;
+		@Dependency public Leaf leaf8;
+		@Dependency public Leaf leaf9;
+	}
+
+	/*
+	 * Classes for Injector.satisfyDependenciesWithConfigurationOfClassMap.
+	 */
+
+	public interface Greeter {
+		String greet(String name);
+	}
+
+	public static class PoliteGreeter implements Greeter {
+		@Override
+		public String greet(String name) {
+			return "Good day, " + name;
+		}
+	}
+
+	public static class Configured {
+		@Dependency
+		public Greeter greeter;
+
+		@Dependency
+		public SingletonService service;
+	}
+
+	/*
+	 * A class with constructors taking zero to nine arguments.
+	 */
+
+	public static class Arity {
+		public final int sum;
+
+		public Arity() { this.sum = 0; }
+		public Arity(Integer a) { this.sum = a; }
+		public Arity(Integer a, Integer b) { this.sum = a + b; }
+		public Arity(Integer a, Integer b, Integer c) { this.sum = a + b + c; }
+		public Arity(Integer a, Integer b, Integer c, Integer d) { this.sum = a + b + c + d; }
+		public Arity(Integer a, Integer b, Integer c, Integer d, Integer e) { this.sum = a + b + c + d + e; }
+		public Arity(Integer a, Integer b, Integer c, Integer d, Integer e, Integer f) { this.sum = a + b + c + d + e + f; }
+		public Arity(Integer a, Integer b, Integer c, Integer d, Integer e, Integer f, Integer g) { this.sum = a + b + c + d + e + f + g; }
+		public Arity(Integer a, Integer b, Integer c, Integer d, Integer e, Integer f, Integer g, Integer h) { this.sum = a + b + c + d + e + f + g + h; }
+		public Arity(Integer a, Integer b, Integer c, Integer d, Integer e, Integer f, Integer g, Integer h, Integer i) { this.sum = a + b + c + d + e + f + g + h + i; }
+	}
+
+	/*
+	 * A class whose method is invoked through MethodInvocationUtil.
+	 */
+
+	public static class Calculator {
+		public Integer add(Integer a, Integer b) {
+			return a + b;
+		}
+	}
+}
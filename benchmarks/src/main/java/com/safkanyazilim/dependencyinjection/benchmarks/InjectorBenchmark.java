@@ -0,0 +1,141 @@
+package com.safkanyazilim.dependencyinjection.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.safkanyazilim.dependencyinjection.AccessorEngine;
+import com.safkanyazilim.dependencyinjection.BindingPlan;
+import com.safkanyazilim.dependencyinjection.Injector;
+import com.safkanyazilim.dependencyinjection.ObjectFactory;
+
+/**
+ * Benchmarks of Injector.generateObjectForClass and
+ * Injector.satisfyDependenciesWithConfigurationOfClassMap (and the BindingPlan compiled from
+ * its configuration), and of a Pooled class generated and released. The *Contended variants run on all available cores at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectorBenchmark {
+
+	private static final int BATCH_SIZE = 1000;
+
+	@Param({"REFLECTIVE", "METHOD_HANDLE"})
+	public AccessorEngine accessorEngine;
+
+	private HashMap<Field, Class<?>> configurationMap;
+
+	private BindingPlan bindingPlan;
+
+	@Setup
+	public void setUp() throws NoSuchFieldException {
+		ObjectFactory.clearObjectMap();
+		ObjectFactory.clearClassMap();
+		ObjectFactory.setAccessorEngine(this.accessorEngine);
+
+		this.configurationMap = new HashMap<Field, Class<?>>();
+		this.configurationMap.put(Fixtures.Configured.class.getField("greeter"), Fixtures.PoliteGreeter.class);
+		this.configurationMap.put(Fixtures.Configured.class.getField("service"), Fixtures.SingletonService.class);
+		this.bindingPlan = Injector.compileConfigurationOfClassMap(Fixtures.Configured.class, this.configurationMap);
+	}
+
+	@Benchmark
+	public Object singleton() {
+		return Injector.generateObjectForClass(Fixtures.SingletonService.class);
+	}
+
+	@Benchmark
+	public Object prototype() {
+		return Injector.generateObjectForClass(Fixtures.PrototypeService.class);
+	}
+
+	/**
+	 * Generates BATCH_SIZE prototypes at once; the time reported is per object, as for prototype().
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public Object prototypeBatch() {
+		return Injector.generateObjectsForClass(Fixtures.PrototypeService.class, BATCH_SIZE);
+	}
+
+	@Benchmark
+	public Object pooled() {
+		Fixtures.PooledHandler handler = Injector.generateObjectForClass(Fixtures.PooledHandler.class);
+		Injector.releaseObjectForClass(Fixtures.PooledHandler.class, handler);
+		return handler;
+	}
+
+	@Benchmark
+	public Object deepGraph() {
+		return Injector.generateObjectForClass(Fixtures.Deep0.class);
+	}
+
+	@Benchmark
+	public Object wideGraph() {
+		return Injector.generateObjectForClass(Fixtures.Wide.class);
+	}
+
+	@Benchmark
+	public Object configurationMap() {
+		Fixtures.Configured configured = new Fixtures.Configured();
+		Injector.satisfyDependenciesWithConfigurationOfClassMap(configured, this.configurationMap);
+		return configured;
+	}
+
+	@Benchmark
+	public Object bindingPlan() {
+		Fixtures.Configured configured = new Fixtures.Configured();
+		Injector.satisfyDependenciesWithBindingPlan(configured, this.bindingPlan);
+		return configured;
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object singletonContended() {
+		return Injector.generateObjectForClass(Fixtures.SingletonService.class);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object prototypeContended() {
+		return Injector.generateObjectForClass(Fixtures.PrototypeService.class);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object pooledContended() {
+		Fixtures.PooledHandler handler = Injector.generateObjectForClass(Fixtures.PooledHandler.class);
+		Injector.releaseObjectForClass(Fixtures.PooledHandler.class, handler);
+		return handler;
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object deepGraphContended() {
+		return Injector.generateObjectForClass(Fixtures.Deep0.class);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object wideGraphContended() {
+		return Injector.generateObjectForClass(Fixtures.Wide.class);
+	}
+}
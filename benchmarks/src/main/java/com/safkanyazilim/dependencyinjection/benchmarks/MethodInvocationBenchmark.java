@@ -0,0 +1,50 @@
+package com.safkanyazilim.dependencyinjection.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.safkanyazilim.introspection.MethodInvocationUtil;
+
+/**
+ * Benchmarks of MethodInvocationUtil.InvokeMethodOfClass, compared to a direct call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvocationBenchmark {
+
+	private final Fixtures.Calculator calculator = new Fixtures.Calculator();
+
+	private final Integer a = Integer.valueOf(1000);
+
+	private final Integer b = Integer.valueOf(2000);
+
+	@Benchmark
+	public Object invokeMethodOfClass() throws Exception {
+		return MethodInvocationUtil.InvokeMethodOfClass(Fixtures.Calculator.class, "add", this.calculator, this.a, this.b);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object invokeMethodOfClassContended() throws Exception {
+		return MethodInvocationUtil.InvokeMethodOfClass(Fixtures.Calculator.class, "add", this.calculator, this.a, this.b);
+	}
+
+	@Benchmark
+	public Object baseline() {
+		return this.calculator.add(this.a, this.b);
+	}
+}
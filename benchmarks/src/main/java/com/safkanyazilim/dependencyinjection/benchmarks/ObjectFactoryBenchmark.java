@@ -0,0 +1,101 @@
+package com.safkanyazilim.dependencyinjection.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.safkanyazilim.dependencyinjection.AccessorEngine;
+import com.safkanyazilim.dependencyinjection.ObjectFactory;
+
+/**
+ * Benchmarks of ObjectFactory.newObject with zero to nine constructor arguments, compared
+ * to using the new operator directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectFactoryBenchmark {
+
+	@Param({"REFLECTIVE", "METHOD_HANDLE"})
+	public AccessorEngine accessorEngine;
+
+	@Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"})
+	public int arity;
+
+	private Object[] arguments;
+
+	@Setup
+	public void setUp() {
+		ObjectFactory.clearObjectMap();
+		ObjectFactory.clearClassMap();
+		ObjectFactory.setAccessorEngine(this.accessorEngine);
+
+		this.arguments = new Object[this.arity];
+
+		for (int i = 0; i < this.arity; i++) {
+			this.arguments[i] = Integer.valueOf(i);
+		}
+	}
+
+	@Benchmark
+	public Object newObject() {
+		return ObjectFactory.newObject(Fixtures.Arity.class, this.arguments);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object newObjectContended() {
+		return ObjectFactory.newObject(Fixtures.Arity.class, this.arguments);
+	}
+
+	/**
+	 * Calls the constructor taking as many arguments directly, with the same (boxed)
+	 * arguments newObject() is given.
+	 */
+	@Benchmark
+	public Object baseline() {
+		Object[] args = this.arguments;
+
+		switch (this.arity) {
+		case 0:
+			return new Fixtures.Arity();
+		case 1:
+			return new Fixtures.Arity((Integer)args[0]);
+		case 2:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1]);
+		case 3:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1], (Integer)args[2]);
+		case 4:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1], (Integer)args[2], (Integer)args[3]);
+		case 5:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1], (Integer)args[2], (Integer)args[3], (Integer)args[4]);
+		case 6:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1], (Integer)args[2], (Integer)args[3], (Integer)args[4], (Integer)args[5]);
+		case 7:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1], (Integer)args[2], (Integer)args[3], (Integer)args[4], (Integer)args[5],
+									  (Integer)args[6]);
+		case 8:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1], (Integer)args[2], (Integer)args[3], (Integer)args[4], (Integer)args[5],
+									  (Integer)args[6], (Integer)args[7]);
+		case 9:
+			return new Fixtures.Arity((Integer)args[0], (Integer)args[1], (Integer)args[2], (Integer)args[3], (Integer)args[4], (Integer)args[5],
+									  (Integer)args[6], (Integer)args[7], (Integer)args[8]);
+		default:
+			throw new IllegalStateException("No constructor of Arity takes " + this.arity + " arguments");
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package com.safkanyazilim.dependencyinjection.processor;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * <p>
+ * Writes META-INF/sydependencyinjector.index, listing the classes annotated with @Singleton
+ * and the bindings declared with @Registry, to be read at startup by InjectionIndex. The
+ * file is written once, in the last round of processing.
+ * </p>
+ */
+@SupportedAnnotationTypes({
+	InjectorFactoryProcessor.SINGLETON,
+	InjectionIndexProcessor.REGISTRY
+})
+public class InjectionIndexProcessor extends AbstractProcessor {
+
+	static final String REGISTRY = InjectorFactoryProcessor.PACKAGE + ".Registry";
+
+	static final String RESOURCE_NAME = "META-INF/sydependencyinjector.index";
+
+	private final Set<String> lines = new LinkedHashSet<String>();
+
+	/**
+	 * The implementation class each bound class has been bound to so far, by binary name.
+	 */
+	private final Map<String, String> bindings = new HashMap<String, String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+		for (TypeElement annotation : annotations) {
+			boolean registry = annotation.getQualifiedName().contentEquals(REGISTRY);
+
+			for (Element element : roundEnvironment.getElementsAnnotatedWith(annotation)) {
+				if (!(element instanceof TypeElement)) {
+					continue;
+				}
+
+				TypeElement type = (TypeElement)element;
+
+				if (registry) {
+					this.addBindings(type, annotationOf(type, REGISTRY));
+				} else {
+					this.lines.add("singleton " + this.binaryName(type));
+				}
+			}
+		}
+
+		if (roundEnvironment.processingOver() && !this.lines.isEmpty()) {
+			this.writeIndex();
+		}
+
+		return false;
+	}
+
+	private void addBindings(TypeElement type, AnnotationMirror annotation) {
+		Types types = this.processingEnv.getTypeUtils();
+		List<TypeMirror> boundTypes = new ArrayList<TypeMirror>();
+
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals("value")) {
+				for (Object value : (List<?>)entry.getValue().getValue()) {
+					boundTypes.add((TypeMirror)((AnnotationValue)value).getValue());
+				}
+			}
+		}
+
+		if (boundTypes.isEmpty()) {
+			// Interfaces such as Serializable or Comparable are no bindings; they must be given.
+			for (TypeMirror implemented : type.getInterfaces()) {
+				if (!this.isJavaType(implemented)) {
+					boundTypes.add(implemented);
+				}
+			}
+		}
+
+		if (boundTypes.isEmpty()) {
+			this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"@Registry class " + type.getQualifiedName() + " gives no classes to bind to, and implements no interfaces outside the java packages", type);
+		}
+
+		for (TypeMirror boundType : boundTypes) {
+			if (!types.isAssignable(types.erasure(type.asType()), types.erasure(boundType))) {
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"@Registry class " + type.getQualifiedName() + " can not be bound to " + boundType, type);
+				continue;
+			}
+
+			TypeElement boundElement = (TypeElement)((DeclaredType)boundType).asElement();
+			String boundName = this.binaryName(boundElement);
+			String implementationName = this.binaryName(type);
+			String previous = this.bindings.get(boundName);
+
+			if (previous != null && !previous.equals(implementationName)) {
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"@Registry class " + type.getQualifiedName() + " can not be bound to " + boundType + ", already bound to " + previous, type);
+				continue;
+			}
+
+			this.bindings.put(boundName, implementationName);
+			this.lines.add("binding " + boundName + " " + implementationName);
+		}
+	}
+
+	private boolean isJavaType(TypeMirror type) {
+		Element element = this.processingEnv.getTypeUtils().asElement(type);
+
+		return element != null && this.processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString().startsWith("java.");
+	}
+
+	private void writeIndex() {
+		try {
+			FileObject resource = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", RESOURCE_NAME);
+			Writer writer = new OutputStreamWriter(resource.openOutputStream(), "UTF-8");
+
+			try {
+				writer.write("# Generated by " + InjectionIndexProcessor.class.getName() + ", do not edit.\n");
+
+				for (String line : this.lines) {
+					writer.write(line);
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Failed writing " + RESOURCE_NAME + ": " + e.getMessage());
+		}
+	}
+
+	private String binaryName(TypeElement type) {
+		return this.processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	private static AnnotationMirror annotationOf(Element element, String annotationName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (((TypeElement)annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+				return annotation;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,375 @@
+package com.safkanyazilim.dependencyinjection.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * <p>
+ * Generates an InjectorFactory for every class using @Dependency, @Singleton or @Initializer,
+ * so that such classes can be constructed and injected without reflection.
+ * </p>
+ *
+ * <p>
+ * The generated factory lives in the same package as the class, so it can only be generated
+ * when everything it touches is accessible from there: the class must be a non-generic,
+ * non-abstract top level or static nested class with a public no-argument constructor, its
+ * dependency fields must be non-private, non-final and non-static (and public, if declared
+ * in a superclass from another package), and its initializers must take no arguments and
+ * be synchronous. Classes using constructor injection are not supported either.
+ * Otherwise, no factory is generated and the Injector falls back to reflection for that
+ * class.
+ * </p>
+ */
+@SupportedAnnotationTypes({
+	InjectorFactoryProcessor.DEPENDENCY,
+	InjectorFactoryProcessor.SINGLETON,
+	InjectorFactoryProcessor.INITIALIZER
+})
+public class InjectorFactoryProcessor extends AbstractProcessor {
+
+	static final String PACKAGE = "com.safkanyazilim.dependencyinjection";
+
+	static final String DEPENDENCY = PACKAGE + ".Dependency";
+
+	static final String SINGLETON = PACKAGE + ".Singleton";
+
+	static final String INITIALIZER = PACKAGE + ".Initializer";
+
+	static final String PROVIDER = PACKAGE + ".Provider";
+
+	static final String FACTORY_SUFFIX = "$$InjectorFactory";
+
+	private final Set<String> processedTypes = new HashSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+		Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnvironment.getElementsAnnotatedWith(annotation)) {
+				TypeElement type = enclosingType(element);
+
+				if (type != null) {
+					types.add(type);
+				}
+			}
+		}
+
+		for (TypeElement type : types) {
+			if (this.processedTypes.add(type.getQualifiedName().toString())) {
+				this.generateFactory(type);
+			}
+		}
+
+		return false;
+	}
+
+	private static TypeElement enclosingType(Element element) {
+		while (element != null && !(element.getKind().isClass() || element.getKind().isInterface())) {
+			element = element.getEnclosingElement();
+		}
+
+		return (TypeElement)element;
+	}
+
+	private void generateFactory(TypeElement type) {
+		String reason = this.whyNotGeneratable(type);
+
+		if (reason != null) {
+			this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+					"No InjectorFactory generated for " + type.getQualifiedName() + ", " + reason + "; reflection will be used.", type);
+			return;
+		}
+
+		List<VariableElement> fields = this.dependencyFields(type);
+		List<ExecutableElement> initializers = this.initializers(type);
+
+		String packageName = this.processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String binaryName = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+		String factoryName = binaryName.substring(binaryName.lastIndexOf('.') + 1) + FACTORY_SUFFIX;
+		String typeName = type.getQualifiedName().toString();
+
+		StringBuilder source = new StringBuilder();
+
+		if (packageName.length() > 0) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+
+		source.append("// Generated by ").append(InjectorFactoryProcessor.class.getName()).append(", do not edit.\n");
+		source.append("public final class ").append(factoryName)
+			  .append(" implements ").append(PACKAGE).append(".InjectorFactory<").append(typeName).append("> {\n\n");
+
+		source.append("\tpublic ").append(typeName).append(" newInstance() {\n");
+		source.append("\t\treturn new ").append(typeName).append("();\n");
+		source.append("\t}\n\n");
+
+		source.append("\t@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+		source.append("\tpublic void injectDependencies(").append(typeName).append(" object) {\n");
+
+		for (VariableElement field : fields) {
+			String fieldType = this.processingEnv.getTypeUtils().erasure(field.asType()).toString();
+			String owner = ((TypeElement)field.getEnclosingElement()).getQualifiedName().toString();
+
+			source.append("\t\t((").append(owner).append(")object).").append(field.getSimpleName())
+				  .append(" = (").append(fieldType).append(")").append(PACKAGE);
+
+			if (fieldType.equals(PROVIDER)) {
+				source.append(".Injector.providerForClass(").append(this.providedType(field)).append(".class);\n");
+			} else if (isLazy(field)) {
+				source.append(".Injector.lazyProxyForClass(").append(fieldType).append(".class);\n");
+			} else {
+				source.append(".Injector.generateObjectForClass(").append(fieldType).append(".class);\n");
+			}
+		}
+
+		for (ExecutableElement initializer : initializers) {
+			source.append("\t\ttry {\n");
+			source.append("\t\t\tobject.").append(initializer.getSimpleName()).append("();\n");
+			source.append("\t\t} catch (Exception e) {\n");
+			source.append("\t\t\tthrow new ").append(PACKAGE).append(".InjectionException(\"Failed calling method ")
+				  .append(initializer.getSimpleName()).append(" of ").append(typeName).append("\", e);\n");
+			source.append("\t\t}\n");
+		}
+
+		source.append("\t}\n");
+		source.append("}\n");
+
+		try {
+			Writer writer = this.processingEnv.getFiler().createSourceFile(binaryName + FACTORY_SUFFIX, type).openWriter();
+
+			try {
+				writer.write(source.toString());
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Failed writing InjectorFactory for " + typeName + ": " + e.getMessage(), type);
+		}
+	}
+
+	/**
+	 * @return the reason no factory can be generated for the given type, or null if one can.
+	 */
+	private String whyNotGeneratable(TypeElement type) {
+		if (type.getKind() != ElementKind.CLASS) {
+			return "it is not a class";
+		}
+
+		if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+			return "it is abstract";
+		}
+
+		if (!type.getTypeParameters().isEmpty()) {
+			return "it is generic";
+		}
+
+		for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+			TypeElement enclosing = (TypeElement)element;
+
+			if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+				return "it is not accessible from its package";
+			}
+
+			if (enclosing.getNestingKind() == NestingKind.MEMBER && !enclosing.getModifiers().contains(Modifier.STATIC)) {
+				return "it is an inner class";
+			}
+
+			if (enclosing.getNestingKind() == NestingKind.LOCAL || enclosing.getNestingKind() == NestingKind.ANONYMOUS) {
+				return "it is a local class";
+			}
+		}
+
+		boolean hasDefaultConstructor = false;
+
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (hasAnnotation(constructor, DEPENDENCY)) {
+				return "it uses constructor injection";
+			}
+
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				hasDefaultConstructor = true;
+			}
+		}
+
+		if (!hasDefaultConstructor) {
+			return "it has no public no-argument constructor";
+		}
+
+		PackageElement typePackage = this.processingEnv.getElementUtils().getPackageOf(type);
+
+		for (TypeElement current = type; current != null; current = superclassOf(current)) {
+			for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+				if (!hasAnnotation(field, DEPENDENCY)) {
+					continue;
+				}
+
+				Set<Modifier> modifiers = field.getModifiers();
+
+				if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)) {
+					return "dependency field " + field.getSimpleName() + " is private, final or static";
+				}
+
+				if (!modifiers.contains(Modifier.PUBLIC) && !this.processingEnv.getElementUtils().getPackageOf(current).equals(typePackage)) {
+					return "dependency field " + field.getSimpleName() + " is not accessible from its package";
+				}
+
+				if (field.asType().getKind() != TypeKind.DECLARED) {
+					return "dependency field " + field.getSimpleName() + " is not of a class or interface type";
+				}
+
+				if (this.processingEnv.getTypeUtils().erasure(field.asType()).toString().equals(PROVIDER) && this.providedType(field) == null) {
+					return "provider dependency field " + field.getSimpleName() + " does not name the class it provides";
+				}
+
+				if (isLazy(field) && ((DeclaredType)field.asType()).asElement().getKind() != ElementKind.INTERFACE) {
+					return "lazy dependency field " + field.getSimpleName() + " is not of an interface type";
+				}
+			}
+		}
+
+		for (ExecutableElement initializer : this.initializers(type)) {
+			if (!initializer.getParameters().isEmpty()) {
+				return "initializer " + initializer.getSimpleName() + " takes arguments";
+			}
+
+			if (isSet(initializer, INITIALIZER, "async") || this.returnsCompletionStage(initializer)) {
+				return "initializer " + initializer.getSimpleName() + " is asynchronous";
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Finds the dependency fields of the given type and all its superclasses, in the same
+	 * order as the reflective injection plan.
+	 */
+	private List<VariableElement> dependencyFields(TypeElement type) {
+		List<VariableElement> fields = new ArrayList<VariableElement>();
+
+		for (TypeElement current = type; current != null; current = superclassOf(current)) {
+			for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+				if (hasAnnotation(field, DEPENDENCY)) {
+					fields.add(field);
+				}
+			}
+		}
+
+		return fields;
+	}
+
+	/**
+	 * Finds the public instance methods of the given type (declared or inherited, but not
+	 * overridden) that are annotated with @Initializer, like Class.getMethods() would.
+	 */
+	private List<ExecutableElement> initializers(TypeElement type) {
+		List<ExecutableElement> initializers = new ArrayList<ExecutableElement>();
+
+		for (ExecutableElement method : ElementFilter.methodsIn(this.processingEnv.getElementUtils().getAllMembers(type))) {
+			Set<Modifier> modifiers = method.getModifiers();
+
+			if (modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.STATIC) && hasAnnotation(method, INITIALIZER)) {
+				initializers.add(method);
+			}
+		}
+
+		return initializers;
+	}
+
+	private static TypeElement superclassOf(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+
+		return (TypeElement)((DeclaredType)superclass).asElement();
+	}
+
+	/**
+	 * @return the erasure of the T of a field declared as Provider&lt;T&gt;, or null if T is
+	 *         missing or not a class or interface type.
+	 */
+	private String providedType(VariableElement field) {
+		List<? extends TypeMirror> typeArguments = ((DeclaredType)field.asType()).getTypeArguments();
+
+		if (typeArguments.size() != 1 || typeArguments.get(0).getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+
+		return this.processingEnv.getTypeUtils().erasure(typeArguments.get(0)).toString();
+	}
+
+	private static boolean isLazy(VariableElement field) {
+		return isSet(field, DEPENDENCY, "lazy");
+	}
+
+	private boolean returnsCompletionStage(ExecutableElement method) {
+		Types types = this.processingEnv.getTypeUtils();
+		TypeElement completionStage = this.processingEnv.getElementUtils().getTypeElement(CompletionStage.class.getName());
+
+		return types.isAssignable(types.erasure(method.getReturnType()), types.erasure(completionStage.asType()));
+	}
+
+	/**
+	 * @return true if the given boolean element of the given annotation on the element is
+	 *         set to true.
+	 */
+	private static boolean isSet(Element element, String annotationName, String valueName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (((TypeElement)annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+				for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+					if (entry.getKey().getSimpleName().contentEquals(valueName)) {
+						return Boolean.TRUE.equals(entry.getValue().getValue());
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean hasAnnotation(Element element, String annotationName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (((TypeElement)annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,40 @@
+package com.safkanyazilim.dependencyinjection;
+
+/**
+ * <p>
+ * The mechanism used by ObjectFactory to invoke constructors and by Injector to assign
+ * dependency fields.
+ * </p>
+ * 
+ * <p>
+ * REFLECTIVE uses Constructor.newInstance and Field.set, and is limited to constructors
+ * with at most nine arguments. METHOD_HANDLE converts constructors and fields to cached
+ * MethodHandles once, which the JIT can inline, and has no limit on the number of arguments.
+ * </p>
+ * 
+ * <p>
+ * The default engine is taken from the system property
+ * <code>com.safkanyazilim.dependencyinjection.accessorEngine</code> (either "REFLECTIVE" or
+ * "METHOD_HANDLE"), and can be changed at runtime using ObjectFactory.setAccessorEngine().
+ * </p>
+ */
+public enum AccessorEngine {
+	REFLECTIVE,
+	METHOD_HANDLE;
+	
+	public static final String SYSTEM_PROPERTY = "com.safkanyazilim.dependencyinjection.accessorEngine";
+	
+	static AccessorEngine fromSystemProperty() {
+		String value = System.getProperty(SYSTEM_PROPERTY);
+		
+		if (value == null) {
+			return REFLECTIVE;
+		}
+		
+		try {
+			return AccessorEngine.valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new InjectionException("Unknown accessor engine " + value + " given in " + SYSTEM_PROPERTY, e);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Tracks the readiness of objects generated by Injector.generateObjectForClassAsync(). While
+ * an object is being generated asynchronously, each object whose dependencies are being
+ * satisfied has a frame on the generating thread, collecting the futures of its
+ * dependencies which are not ready yet. If there are any, or if the object has
+ * asynchronous initializers, its initializers are called on the initializer executor once
+ * those futures complete, and the object becomes ready when they have completed.
+ * </p>
+ *
+ * <p>
+ * Singletons which are not ready yet are remembered until they are, so that objects
+ * depending on them wait for them too; generateObjectForClass() blocks until they are
+ * ready. Singletons whose initialization fails are withdrawn from their scope.
+ * </p>
+ */
+final class AsyncInitialization {
+
+	private static final ThreadLocal<Frame> frames = new ThreadLocal<Frame>();
+
+	private static final Map<Object, CompletableFuture<?>> pendingSingletons = Collections.synchronizedMap(new IdentityHashMap<Object, CompletableFuture<?>>());
+
+	/**
+	 * The size of pendingSingletons, so that finding a singleton does not take its lock when
+	 * no singleton is pending, which is almost always the case.
+	 */
+	private static final AtomicInteger pendingSingletonCount = new AtomicInteger();
+
+	private static volatile Executor executor = ForkJoinPool.commonPool();
+
+	private AsyncInitialization() {
+	}
+
+	static Executor getExecutor() {
+		return executor;
+	}
+
+	static void setExecutor(Executor executor) {
+		AsyncInitialization.executor = executor;
+	}
+
+	static <T> CompletableFuture<T> generate(Class<T> clazz) {
+		Frame previous = frames.get();
+		Frame frame = new Frame(previous);
+		final T object;
+
+		frames.set(frame);
+
+		try {
+			object = Injector.generateObjectForClass(clazz);
+		} catch (RuntimeException e) {
+			return failed(e);
+		} catch (Error e) {
+			return failed(e);
+		} finally {
+			if (previous == null) {
+				frames.remove();
+			} else {
+				frames.set(previous);
+			}
+		}
+
+		return frame.dependenciesReady().thenApply(new Function<Void, T>() {
+			@Override
+			public T apply(Void ignored) {
+				return object;
+			}
+		});
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable throwable) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(throwable);
+
+		return future;
+	}
+
+	/**
+	 * @return true if an object is being generated asynchronously on the current thread.
+	 */
+	static boolean isActive() {
+		return frames.get() != null;
+	}
+
+	/**
+	 * Starts satisfying the dependencies of an object.
+	 *
+	 * @return the frame of the object, or null if no object is being generated
+	 *         asynchronously on the current thread.
+	 */
+	static Frame enter() {
+		Frame parent = frames.get();
+
+		if (parent == null) {
+			return null;
+		}
+
+		Frame frame = new Frame(parent);
+		frames.set(frame);
+
+		return frame;
+	}
+
+	/**
+	 * Ends satisfying the dependencies of an object which failed.
+	 */
+	static void abandon(Frame frame) {
+		if (frame != null) {
+			frames.set(frame.parent);
+		}
+	}
+
+	/**
+	 * Ends satisfying the dependencies of an object, and calls its initializers: right
+	 * away if its dependencies are ready and its initializers are synchronous, or on the
+	 * initializer executor once its dependencies are ready otherwise.
+	 *
+	 * @param plan the plan of the object, or null if its initializers have been called already
+	 * @return a future completing when the object is ready, or null if it is ready.
+	 */
+	static CompletableFuture<?> exit(Frame frame, final InjectionPlan plan, final Object object) {
+		frames.set(frame.parent);
+
+		if (frame.pending == null && (plan == null || !plan.hasAsyncInitializers())) {
+			if (plan != null) {
+				Injector.invokeInitializers(plan, object);
+			}
+
+			return null;
+		}
+
+		CompletableFuture<?> ready = frame.dependenciesReady().thenComposeAsync(new Function<Void, CompletionStage<Object>>() {
+			@Override
+			public CompletionStage<Object> apply(Void ignored) {
+				return plan != null ? invokeInitializers(plan, object) : CompletableFuture.completedFuture(null);
+			}
+		}, executor);
+
+		frame.parent.add(ready);
+
+		return ready;
+	}
+
+	/**
+	 * Calls the initializers of the object one after the other, waiting for the
+	 * CompletionStages returned by asynchronous ones.
+	 */
+	private static CompletableFuture<Object> invokeInitializers(final InjectionPlan plan, final Object object) {
+		CompletableFuture<Object> chain = CompletableFuture.completedFuture(null);
+
+		for (int i = 0; i < plan.getInitializerCount(); i++) {
+			final Method method = plan.getInitializer(i);
+
+			chain = chain.thenCompose(new Function<Object, CompletionStage<Object>>() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public CompletionStage<Object> apply(Object ignored) {
+					Object result = Injector.invokeInitializer(plan, method, object);
+
+					if (result instanceof CompletionStage) {
+						return (CompletionStage<Object>)result;
+					}
+
+					return CompletableFuture.completedFuture(result);
+				}
+			});
+		}
+
+		return chain;
+	}
+
+	/**
+	 * Publishes a singleton which is not ready yet to the scope owning it, and remembers it
+	 * until it is. If its initialization fails, it is withdrawn from the scope (before it is
+	 * forgotten, so that it is never found as if it were ready), and constructed anew on its
+	 * next request.
+	 */
+	static void singletonConstructed(final Scope owner, final Class<?> clazz, final Object singleton, Retained retained,
+									 CompletableFuture<?> ready) {
+		pendingSingletons.put(singleton, ready);
+		pendingSingletonCount.incrementAndGet();
+		owner.putSingleton(clazz, singleton, retained);
+
+		ready.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable throwable) {
+				if (throwable != null) {
+					owner.removeSingleton(clazz, singleton);
+				}
+
+				pendingSingletons.remove(singleton);
+				pendingSingletonCount.decrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * Called when a singleton is found. If it is not ready yet, the object being generated
+	 * asynchronously waits for it, or the current thread waits for it otherwise, if it may.
+	 *
+	 * @param mayWait false if the current thread is generating objects, which the singleton
+	 *        may be waiting for; it then takes the singleton as it is.
+	 */
+	static void singletonFound(Object singleton, boolean mayWait) {
+		if (pendingSingletonCount.get() == 0) {
+			return;
+		}
+
+		CompletableFuture<?> ready = pendingSingletons.get(singleton);
+
+		if (ready == null) {
+			return;
+		}
+
+		Frame frame = frames.get();
+
+		if (frame != null) {
+			frame.add(ready);
+			return;
+		}
+
+		if (!mayWait) {
+			return;
+		}
+
+		try {
+			ready.join();
+		} catch (CompletionException e) {
+			throw new InjectionException("Initialization of " + singleton.getClass().getCanonicalName() + " failed", e.getCause());
+		}
+	}
+
+	static final class Frame {
+		private final Frame parent;
+
+		private List<CompletableFuture<?>> pending;
+
+		Frame(Frame parent) {
+			this.parent = parent;
+		}
+
+		void add(CompletableFuture<?> future) {
+			if (this.pending == null) {
+				this.pending = new ArrayList<CompletableFuture<?>>();
+			}
+
+			this.pending.add(future);
+		}
+
+		CompletableFuture<Void> dependenciesReady() {
+			if (this.pending == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+
+			return CompletableFuture.allOf(this.pending.toArray(new CompletableFuture<?>[this.pending.size()]));
+		}
+	}
+}
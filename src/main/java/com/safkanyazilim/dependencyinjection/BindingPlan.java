@@ -0,0 +1,170 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <p>
+ * A configuration of class map (see Injector.satisfyDependenciesWithConfigurationOfClassMap())
+ * compiled against a class, by Injector.compileConfigurationOfClassMap(). It holds only the
+ * dependency fields of the class the configuration binds, each with the class it is bound
+ * to, so applying it does not go through the fields of the class or look up the map.
+ * </p>
+ *
+ * <p>
+ * Where every bound field can be assigned through a MethodHandle, the bindings are composed
+ * into a single handle resolving and assigning them in order. A plan is immutable, and can
+ * be shared between threads.
+ * </p>
+ */
+public final class BindingPlan {
+
+	private final Class<?> type;
+
+	private final InjectionPlan plan;
+
+	/**
+	 * The indices of the bound fields in the injection plan of the class, in its order.
+	 */
+	private final int[] indices;
+
+	private final Class<?>[] boundClasses;
+
+	/**
+	 * A handle of type (Object)void assigning all bound fields of an object, or null if
+	 * some field can only be assigned reflectively.
+	 */
+	private final MethodHandle bindings;
+
+	/**
+	 * Compiles the configuration against the class. Fields of the configuration which do not
+	 * belong to the class or its superclasses are left out, so the same configuration can be
+	 * compiled against several classes.
+	 *
+	 * @throws InjectionException if a field of the class in the configuration is not a
+	 *         dependency, or is bound to a class which can not be assigned to it.
+	 */
+	BindingPlan(Class<?> type, Map<Field, Class<?>> configurationMap) {
+		InjectionPlan plan = InjectionPlan.forClass(type);
+		int[] indices = new int[plan.getDependencyCount()];
+		Class<?>[] boundClasses = new Class<?>[plan.getDependencyCount()];
+		int count = 0;
+
+		for (int i = 0; i < plan.getDependencyCount(); i++) {
+			Field field = plan.getDependencyField(i);
+
+			if (configurationMap.containsKey(field)) {
+				Class<?> boundClass = configurationMap.get(field);
+
+				BindingPlan.validate(plan, i, boundClass);
+				indices[count] = i;
+				boundClasses[count] = boundClass;
+				count++;
+			}
+		}
+
+		for (Field field : configurationMap.keySet()) {
+			if (field.getDeclaringClass().isAssignableFrom(type) && !BindingPlan.contains(plan, indices, count, field)) {
+				throw new InjectionException("Field " + field.getName() + " of " + field.getDeclaringClass().getCanonicalName()
+											 + " is configured, but it is not a dependency");
+			}
+		}
+
+		this.type = type;
+		this.plan = plan;
+		this.indices = Arrays.copyOf(indices, count);
+		this.boundClasses = Arrays.copyOf(boundClasses, count);
+		this.bindings = this.compile();
+	}
+
+	private static void validate(InjectionPlan plan, int index, Class<?> boundClass) {
+		Field field = plan.getDependencyField(index);
+
+		if (boundClass == null) {
+			throw new InjectionException("Field " + field.getName() + " of " + plan.getType().getCanonicalName()
+										 + " is bound to null");
+		}
+
+		if (!plan.getDependencyType(index).isAssignableFrom(boundClass)) {
+			throw new InjectionException("Field " + field.getName() + " of " + plan.getType().getCanonicalName()
+										 + " can not be bound to " + boundClass.getCanonicalName());
+		}
+
+		if (!boundClass.isInterface() && !Modifier.isAbstract(boundClass.getModifiers())) {
+			// Finds the dependencies and initializers of the bound class now, so that any
+			// errors in them are reported here rather than on first use.
+			InjectionPlan.forClass(boundClass).getDependencyCount();
+		}
+	}
+
+	private static boolean contains(InjectionPlan plan, int[] indices, int count, Field field) {
+		for (int i = 0; i < count; i++) {
+			if (plan.getDependencyField(indices[i]).equals(field)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private MethodHandle compile() {
+		MethodHandle bindings = MethodHandles.identity(Object.class);
+
+		for (int i = this.indices.length - 1; i >= 0; i--) {
+			MethodHandle setter = this.plan.getDependencySetter(this.indices[i]);
+
+			if (setter == null) {
+				return null;
+			}
+
+			bindings = MethodHandles.foldArguments(bindings,
+					FactoryCompiler.injection(setter, this.plan.getDependencyKind(this.indices[i]), this.boundClasses[i]));
+		}
+
+		return bindings.asType(MethodType.methodType(void.class, Object.class));
+	}
+
+	/**
+	 * @return the class the plan was compiled against.
+	 */
+	public Class<?> getType() {
+		return this.type;
+	}
+
+	/**
+	 * @return the number of fields the plan assigns.
+	 */
+	public int getBindingCount() {
+		return this.indices.length;
+	}
+
+	void apply(Object object) {
+		if (!this.type.isInstance(object)) {
+			throw new IllegalArgumentException("Binding plan of " + this.type.getCanonicalName()
+											   + " can not be applied to " + object.getClass().getCanonicalName());
+		}
+
+		if (this.bindings != null && ObjectFactory.getAccessorEngine() == AccessorEngine.METHOD_HANDLE) {
+			try {
+				this.bindings.invokeExact(object);
+				return;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InjectionException("Field injection failed. Trying to inject "
+											 + object.getClass().getCanonicalName(), t);
+			}
+		}
+
+		for (int i = 0; i < this.indices.length; i++) {
+			Injector.injectField(this.plan, this.indices[i], object, this.boundClasses[i]);
+		}
+	}
+}
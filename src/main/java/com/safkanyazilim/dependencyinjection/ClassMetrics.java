@@ -0,0 +1,106 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics InjectionMetrics collected for a single class.
+ */
+public final class ClassMetrics {
+	
+	private final LatencyHistogram objectGeneration = new LatencyHistogram();
+	
+	private final LatencyHistogram dependencySatisfaction = new LatencyHistogram();
+	
+	private final LatencyHistogram constructorInvocation = new LatencyHistogram();
+	
+	private final ConcurrentMap<String, LatencyHistogram> initializerInvocations = new ConcurrentHashMap<String, LatencyHistogram>();
+	
+	private final LongAdder singletonHits = new LongAdder();
+	
+	private final LongAdder singletonMisses = new LongAdder();
+	
+	ClassMetrics() {
+	}
+	
+	/**
+	 * @return the durations of generating (or retrieving, for singletons) objects of the class.
+	 */
+	public LatencyHistogram getObjectGeneration() {
+		return this.objectGeneration;
+	}
+	
+	/**
+	 * @return the durations of satisfying the dependencies of objects of the class.
+	 */
+	public LatencyHistogram getDependencySatisfaction() {
+		return this.dependencySatisfaction;
+	}
+	
+	/**
+	 * @return the durations of constructor invocations for the class.
+	 */
+	public LatencyHistogram getConstructorInvocation() {
+		return this.constructorInvocation;
+	}
+	
+	/**
+	 * @return the durations of the initializers of the class, by method name.
+	 */
+	public Map<String, LatencyHistogram> getInitializerInvocations() {
+		return Collections.unmodifiableMap(this.initializerInvocations);
+	}
+	
+	public long getSingletonHits() {
+		return this.singletonHits.sum();
+	}
+	
+	public long getSingletonMisses() {
+		return this.singletonMisses.sum();
+	}
+	
+	LatencyHistogram initializerInvocation(String methodName) {
+		LatencyHistogram histogram = this.initializerInvocations.get(methodName);
+		
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existing = this.initializerInvocations.putIfAbsent(methodName, histogram);
+			
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		
+		return histogram;
+	}
+	
+	void singletonLookup(boolean hit) {
+		if (hit) {
+			this.singletonHits.increment();
+		} else {
+			this.singletonMisses.increment();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append("generate: ").append(this.objectGeneration)
+			   .append("\n  satisfy: ").append(this.dependencySatisfaction)
+			   .append("\n  construct: ").append(this.constructorInvocation);
+		
+		for (Map.Entry<String, LatencyHistogram> entry : this.initializerInvocations.entrySet()) {
+			builder.append("\n  initializer ").append(entry.getKey()).append(": ").append(entry.getValue());
+		}
+		
+		if (this.getSingletonHits() + this.getSingletonMisses() > 0) {
+			builder.append("\n  singleton hits=").append(this.getSingletonHits()).append(" misses=").append(this.getSingletonMisses());
+		}
+		
+		return builder.toString();
+	}
+}
@@ -0,0 +1,38 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A weak reference to a class, equal to the other references to the same class, to keep
+ * track of classes without keeping them from being unloaded.
+ */
+final class ClassReference extends WeakReference<Class<?>> {
+
+	private final int hashCode;
+
+	ClassReference(Class<?> clazz, ReferenceQueue<Class<?>> queue) {
+		super(clazz, queue);
+		this.hashCode = System.identityHashCode(clazz);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hashCode;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		}
+
+		if (!(other instanceof ClassReference)) {
+			return false;
+		}
+
+		Class<?> clazz = this.get();
+
+		return clazz != null && clazz == ((ClassReference)other).get();
+	}
+}
@@ -6,7 +6,27 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * <p>
+ * Marks a field to be assigned by the Injector. The field is normally assigned an object
+ * of its type, constructed (or found, for singletons) along with the object it belongs to.
+ * </p>
+ * 
+ * <p>
+ * If the field is a Provider&lt;T&gt;, it is assigned a provider which constructs (or finds)
+ * the T on the first call to get(). If the field is of an interface type and lazy is set,
+ * it is assigned a proxy doing the same on the first method call.
+ * </p>
+ * 
+ * <p>
+ * Marking a constructor makes the Injector construct objects of its class with it, passing
+ * an object (or a Provider, or a lazy proxy, as above) for each of its parameters; its
+ * dependencies can then be kept in final fields. A class with a single public constructor,
+ * which takes parameters, is constructed this way without marking it.
+ * </p>
+ */
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.FIELD)
+@Target({ElementType.FIELD, ElementType.CONSTRUCTOR, ElementType.PARAMETER})
 public @interface Dependency {
-}
\ No newline at end of file
+	boolean lazy() default false;
+}
@@ -0,0 +1,239 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * The graph of the classes the Injector constructs to generate an object of a class: an
+ * edge leads from a class to each class it depends on directly, through its injection
+ * constructor or its dependency fields. Providers and lazy dependencies are resolved on
+ * first use, and are not edges. Each class stands for the class it is mapped to in the
+ * current scope.
+ * </p>
+ *
+ * <p>
+ * The Injector checks the graph of a class for cycles before it starts generating an object
+ * of it, rather than finding out midway, with objects half constructed. The graph is walked
+ * depth first without recursion, once for each class and scope with class mappings of its
+ * own, until the class mappings of that scope or its ancestors change. Classes mapped to
+ * objects are not constructed, and so break the cycles they are on; as such objects come
+ * and go (singletons among them), a graph found cyclic is walked again on each check, with
+ * the objects of the current scope.
+ * </p>
+ */
+final class DependencyGraph {
+
+	private static final List<Class<?>> NO_EDGES = Collections.emptyList();
+
+	private DependencyGraph() {
+	}
+
+	/**
+	 * @throws InjectionException if generating an object of the class in the current scope
+	 *         needs an object of a class which is being generated, naming the classes on the
+	 *         cycle.
+	 */
+	static void checkAcyclic(Class<?> clazz) {
+		Scope scope = Scope.current();
+		Scope mappingScope = scope.classMappingScope();
+		int epoch = mappingScope.classMappingEpoch();
+		Verdict verdict = mappingScope.getAcyclicVerdict(clazz);
+
+		if (verdict == null || verdict.epoch != epoch) {
+			verdict = new Verdict(epoch, DependencyGraph.findCycle(clazz, null) != null);
+			mappingScope.setAcyclicVerdict(clazz, verdict);
+		}
+
+		if (!verdict.cyclic) {
+			return;
+		}
+
+		List<Class<?>> cycle = DependencyGraph.findCycle(clazz, scope);
+
+		if (cycle != null) {
+			throw new InjectionException(DependencyGraph.describe(cycle));
+		}
+	}
+
+	/**
+	 * @return the class and the classes reachable from it, whether they are mapped to
+	 *         objects or not.
+	 */
+	static Set<Class<?>> reachableClasses(Class<?> clazz) {
+		Set<Class<?>> classes = Collections.newSetFromMap(new IdentityHashMap<Class<?>, Boolean>());
+		Deque<Class<?>> pending = new ArrayDeque<Class<?>>();
+
+		classes.add(clazz);
+		pending.push(clazz);
+
+		while (!pending.isEmpty()) {
+			for (Class<?> target : DependencyGraph.edges(pending.pop(), null)) {
+				if (classes.add(target)) {
+					pending.push(target);
+				}
+			}
+		}
+
+		return classes;
+	}
+
+	/**
+	 * @param objectScope the scope whose objects break cycles, or null to ignore objects.
+	 * @return the classes on the first cycle reachable from the class, the first one
+	 *         repeated at the end; null if there is none.
+	 */
+	private static List<Class<?>> findCycle(Class<?> clazz, Scope objectScope) {
+		// TRUE while a class is on the path being walked, FALSE once it has been walked.
+		Map<Class<?>, Boolean> states = new IdentityHashMap<Class<?>, Boolean>();
+		Deque<Node> path = new ArrayDeque<Node>();
+
+		states.put(clazz, Boolean.TRUE);
+		path.push(new Node(clazz, DependencyGraph.edges(clazz, objectScope)));
+
+		while (!path.isEmpty()) {
+			Node node = path.peek();
+
+			if (node.next == node.edges.size()) {
+				states.put(node.clazz, Boolean.FALSE);
+				path.pop();
+				continue;
+			}
+
+			Class<?> target = node.edges.get(node.next++);
+			Boolean state = states.get(target);
+
+			if (state == null) {
+				states.put(target, Boolean.TRUE);
+				path.push(new Node(target, DependencyGraph.edges(target, objectScope)));
+			} else if (state.booleanValue()) {
+				return DependencyGraph.cycle(path, target);
+			}
+		}
+
+		return null;
+	}
+
+	private static List<Class<?>> edges(Class<?> clazz, Scope objectScope) {
+		if (objectScope != null && objectScope.findObject(clazz) != null) {
+			return NO_EDGES;
+		}
+
+		Class<?> actualClass = ObjectFactory.resolveClass(clazz);
+
+		if (actualClass.isInterface() || actualClass.isArray() || actualClass.isPrimitive()
+				|| Modifier.isAbstract(actualClass.getModifiers())) {
+			return NO_EDGES;
+		}
+
+		InjectionPlan plan = InjectionPlan.forClass(actualClass);
+		List<Class<?>> edges = new ArrayList<Class<?>>();
+
+		for (int i = 0; i < plan.getConstructorDependencyCount(); i++) {
+			if (plan.getConstructorDependencyKind(i) == InjectionPlan.DependencyKind.DIRECT) {
+				edges.add(plan.getConstructorDependencyType(i));
+			}
+		}
+
+		for (int i = 0; i < plan.getDependencyCount(); i++) {
+			if (plan.getDependencyKind(i) == InjectionPlan.DependencyKind.DIRECT) {
+				edges.add(plan.getDependencyType(i));
+			}
+		}
+
+		return edges;
+	}
+
+	private static List<Class<?>> cycle(Deque<Node> path, Class<?> target) {
+		List<Class<?>> cycle = new ArrayList<Class<?>>();
+		Iterator<Node> nodes = path.descendingIterator();
+
+		while (nodes.hasNext()) {
+			Class<?> clazz = nodes.next().clazz;
+
+			if (clazz == target || !cycle.isEmpty()) {
+				cycle.add(clazz);
+			}
+		}
+
+		cycle.add(target);
+
+		return cycle;
+	}
+
+	/**
+	 * @param cycle the classes on a cycle, the first one repeated at the end.
+	 */
+	static String describe(List<Class<?>> cycle) {
+		StringBuilder message = new StringBuilder("Dependency cycle: ");
+		String separator = "";
+
+		for (Class<?> clazz : cycle) {
+			Class<?> actualClass = ObjectFactory.resolveClass(clazz);
+			message.append(separator).append(clazz.getCanonicalName());
+
+			if (actualClass != clazz) {
+				message.append(" (").append(actualClass.getCanonicalName()).append(')');
+			}
+
+			separator = " -> ";
+		}
+
+		return message.append("; use a Provider or a lazy dependency to break it").toString();
+	}
+
+	/**
+	 * @param cycle the classes of singletons whose locks threads wait for, each held by the
+	 *        thread waiting for the next one, the first one repeated at the end.
+	 */
+	static String describeWaits(List<Class<?>> cycle) {
+		StringBuilder message = new StringBuilder("Singletons constructed on different threads need each other: ");
+		String separator = "";
+
+		for (Class<?> clazz : cycle) {
+			message.append(separator).append(clazz.getCanonicalName());
+			separator = " -> ";
+		}
+
+		return message.append("; do not use a Provider or a lazy dependency while a singleton is being constructed,"
+							  + " but in an initializer or later").toString();
+	}
+
+	/**
+	 * Whether the graph of a class has cycles when objects are ignored, with the class
+	 * mappings of a scope as they were at an epoch.
+	 */
+	static final class Verdict {
+
+		private final int epoch;
+
+		private final boolean cyclic;
+
+		Verdict(int epoch, boolean cyclic) {
+			this.epoch = epoch;
+			this.cyclic = cyclic;
+		}
+	}
+
+	private static final class Node {
+
+		private final Class<?> clazz;
+
+		private final List<Class<?>> edges;
+
+		private int next;
+
+		Node(Class<?> clazz, List<Class<?>> edges) {
+			this.clazz = clazz;
+			this.edges = edges;
+		}
+	}
+}
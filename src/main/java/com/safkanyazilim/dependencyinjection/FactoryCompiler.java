@@ -0,0 +1,275 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Compiles the injection plan of a class into a single MethodHandle of type (Object[])Object,
+ * which constructs an object (with the arguments of its injection constructor, if it has
+ * one), assigns each of its dependency fields and calls each of its initializers. The JIT
+ * compiler can inline such a handle as a whole, rather than going through the plan step by
+ * step.
+ * </p>
+ *
+ * <p>
+ * The objects the class depends on directly are passed to the handle in an array, in the
+ * order of CompiledFactory.getDependencyType(), so that GraphResolver generates them from its
+ * frames rather than the handle calling back into the Injector for them. Providers and
+ * lazy proxies are made by the handle itself.
+ * </p>
+ *
+ * <p>
+ * The handle fails the way the Injector does when it goes through the plan: what the
+ * constructor, a dependency field or an initializer throws is wrapped as by
+ * ObjectFactory.invokeConstructor(), Injector.assignField() and Injector.invokeInitializer().
+ * </p>
+ *
+ * <p>
+ * Compiling takes time, so a class is only compiled once it has been generated a number of
+ * times, the compile threshold; see InjectionPlan.getCompiledFactory(). The threshold is
+ * read from the system property named by THRESHOLD_PROPERTY, and defaults to
+ * DEFAULT_THRESHOLD. A threshold of zero or less disables compiling.
+ * </p>
+ */
+final class FactoryCompiler {
+
+	static final String THRESHOLD_PROPERTY = "com.safkanyazilim.dependencyinjection.compileThreshold";
+
+	static final int DEFAULT_THRESHOLD = 1000;
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final MethodHandle resolveDependency;
+
+	private static final MethodHandle dependencyGetter = MethodHandles.arrayElementGetter(Object[].class);
+
+	private static final MethodHandle constructorFailed;
+
+	private static final MethodHandle injectionFailed;
+
+	private static final MethodHandle initializerFailed;
+
+	static {
+		try {
+			resolveDependency = lookup.findStatic(Injector.class, "resolveDependency",
+					MethodType.methodType(Object.class, InjectionPlan.DependencyKind.class, Class.class));
+			constructorFailed = lookup.findStatic(FactoryCompiler.class, "constructorFailed",
+					MethodType.methodType(Object.class, Throwable.class));
+			injectionFailed = lookup.findStatic(FactoryCompiler.class, "injectionFailed",
+					MethodType.methodType(void.class, Field.class, Throwable.class, Object.class));
+			initializerFailed = lookup.findStatic(FactoryCompiler.class, "initializerFailed",
+					MethodType.methodType(void.class, Method.class, Throwable.class, Object.class));
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		} catch (IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static volatile int threshold = Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+
+	private FactoryCompiler() {
+	}
+
+	static int getThreshold() {
+		return threshold;
+	}
+
+	static void setThreshold(int threshold) {
+		FactoryCompiler.threshold = threshold;
+	}
+
+	/**
+	 * @return the compiled factory of the class, or null if the class can not be compiled:
+	 *         it has a factory generated at compile time already, asynchronous
+	 *         initializers, no constructor to construct it with, or final dependency fields.
+	 */
+	static CompiledFactory compile(InjectionPlan plan) {
+		if (plan.getGeneratedFactory() != null || plan.hasAsyncInitializers()) {
+			return null;
+		}
+
+		try {
+			List<Class<?>> dependencyTypes = new ArrayList<Class<?>>();
+			MethodHandle factory = constructor(plan, dependencyTypes);
+
+			if (factory == null) {
+				return null;
+			}
+
+			MethodHandle[] injections = new MethodHandle[plan.getDependencyCount()];
+
+			for (int i = 0; i < injections.length; i++) {
+				MethodHandle setter = plan.getDependencySetter(i);
+
+				if (setter == null) {
+					return null;
+				}
+
+				setter = MethodHandles.catchException(setter, Throwable.class,
+						MethodHandles.insertArguments(injectionFailed, 0, plan.getDependencyField(i)));
+				injections[i] = MethodHandles.filterArguments(setter, 1,
+						dependency(plan.getDependencyKind(i), plan.getDependencyType(i), dependencyTypes));
+			}
+
+			// Each step takes the object and the dependencies, and returns nothing; folding a
+			// step into the handle after it calls the step first, with the same arguments.
+
+			MethodHandle steps = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, Object[].class);
+
+			for (int i = plan.getInitializerCount() - 1; i >= 0; i--) {
+				steps = MethodHandles.foldArguments(steps,
+						MethodHandles.dropArguments(initializer(plan.getInitializer(i)), 1, Object[].class));
+			}
+
+			for (int i = injections.length - 1; i >= 0; i--) {
+				steps = MethodHandles.foldArguments(steps, injections[i]);
+			}
+
+			// (dependencies) -> steps(factory(dependencies), dependencies)
+			MethodHandle handle = MethodHandles.permuteArguments(MethodHandles.collectArguments(steps, 0, factory),
+					MethodType.methodType(Object.class, Object[].class), 0, 0);
+
+			return new CompiledFactory(handle, dependencyTypes.toArray(new Class<?>[dependencyTypes.size()]));
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return a handle of type (Object[])Object constructing an object of the class from the
+	 *         dependencies, or null if the class has neither an injection constructor nor a
+	 *         public no-argument one.
+	 */
+	private static MethodHandle constructor(InjectionPlan plan, List<Class<?>> dependencyTypes) throws IllegalAccessException {
+		Constructor<?> constructor = plan.getInjectionConstructor();
+
+		if (constructor == null) {
+			constructor = plan.getDefaultConstructor();
+		}
+
+		if (constructor == null) {
+			return null;
+		}
+
+		int arity = constructor.getParameterTypes().length;
+		MethodHandle handle = MethodHandles.catchException(lookup.unreflectConstructor(constructor).asType(MethodType.genericMethodType(arity)),
+				Throwable.class, constructorFailed);
+
+		MethodHandle[] arguments = new MethodHandle[arity];
+
+		for (int i = 0; i < arity; i++) {
+			arguments[i] = dependency(plan.getConstructorDependencyKind(i), plan.getConstructorDependencyType(i), dependencyTypes);
+		}
+
+		// The arguments are resolved in order, the first collected last (outermost); each
+		// takes the dependencies, which are then passed to all of them.
+
+		for (int i = arity - 1; i >= 0; i--) {
+			handle = MethodHandles.collectArguments(handle, i, arguments[i]);
+		}
+
+		return MethodHandles.permuteArguments(handle, MethodType.methodType(Object.class, Object[].class), new int[arity]);
+	}
+
+	/**
+	 * @return a handle of type (Object[])Object, taking the next of the dependencies for a
+	 *         DIRECT dependency, whose type is added to the dependency types, or resolving a
+	 *         provider or lazy proxy otherwise.
+	 */
+	private static MethodHandle dependency(InjectionPlan.DependencyKind kind, Class<?> type, List<Class<?>> dependencyTypes) {
+		if (kind == InjectionPlan.DependencyKind.DIRECT) {
+			dependencyTypes.add(type);
+
+			return MethodHandles.insertArguments(dependencyGetter, 1, dependencyTypes.size() - 1);
+		}
+
+		return MethodHandles.dropArguments(resolver(kind, type), 0, Object[].class);
+	}
+
+	/**
+	 * @return a handle of type (Object)void assigning the field of the given setter, of type
+	 *         (Object,Object)void, an object of the given type resolved by the Injector.
+	 */
+	static MethodHandle injection(MethodHandle setter, InjectionPlan.DependencyKind kind, Class<?> type) {
+		// (value, object) -> void, with the value resolved first.
+		MethodHandle assignment = MethodHandles.permuteArguments(setter,
+				MethodType.methodType(void.class, Object.class, Object.class), 1, 0);
+
+		return MethodHandles.foldArguments(assignment, resolver(kind, type));
+	}
+
+	/**
+	 * @return a handle of type ()Object resolving a dependency.
+	 */
+	private static MethodHandle resolver(InjectionPlan.DependencyKind kind, Class<?> type) {
+		return MethodHandles.insertArguments(resolveDependency, 0, kind, type);
+	}
+
+	/**
+	 * @return a handle of type (Object)void calling the initializer, ignoring what it returns.
+	 */
+	private static MethodHandle initializer(Method method) throws IllegalAccessException {
+		return MethodHandles.catchException(lookup.unreflect(method).asType(MethodType.methodType(void.class, Object.class)),
+				Throwable.class, MethodHandles.insertArguments(initializerFailed, 0, method));
+	}
+
+	private static Object constructorFailed(Throwable thrown) {
+		throw ObjectFactory.constructorFailed(thrown);
+	}
+
+	private static void injectionFailed(Field field, Throwable thrown, Object object) {
+		throw Injector.fieldInjectionFailed(object, field, thrown);
+	}
+
+	private static void initializerFailed(Method method, Throwable thrown, Object object) {
+		throw Injector.initializerFailed(object.getClass(), method, new InvocationTargetException(thrown));
+	}
+
+	/**
+	 * A compiled factory, and the types of the objects to pass it.
+	 */
+	static final class CompiledFactory {
+
+		private final MethodHandle handle;
+
+		private final Class<?>[] dependencyTypes;
+
+		CompiledFactory(MethodHandle handle, Class<?>[] dependencyTypes) {
+			this.handle = handle;
+			this.dependencyTypes = dependencyTypes;
+		}
+
+		int getDependencyCount() {
+			return this.dependencyTypes.length;
+		}
+
+		Class<?> getDependencyType(int index) {
+			return this.dependencyTypes[index];
+		}
+
+		/**
+		 * @param dependencies the objects the class depends on directly, of the dependency
+		 *        types.
+		 */
+		Object invoke(Class<?> clazz, Object[] dependencies) {
+			try {
+				return (Object)this.handle.invokeExact(dependencies);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InjectionException("Failed generating " + clazz.getCanonicalName(), t);
+			}
+		}
+	}
+}
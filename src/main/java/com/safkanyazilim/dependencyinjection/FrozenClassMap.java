@@ -0,0 +1,66 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * An immutable map keyed by classes, used by frozen scopes. Entries are kept in an open
+ * addressing table with linear probing, sized to at most half full, so a lookup is a few
+ * array reads, without any locking or allocation.
+ * </p>
+ *
+ * @param <V> the type of the values
+ */
+final class FrozenClassMap<V> {
+
+	private final Class<?>[] keys;
+
+	private final Object[] values;
+
+	private final int mask;
+
+	FrozenClassMap(Map<Class<?>, ? extends V> map) {
+		int capacity = 2;
+
+		while (capacity < map.size() * 2) {
+			capacity <<= 1;
+		}
+
+		this.keys = new Class<?>[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+
+		for (Map.Entry<Class<?>, ? extends V> entry : map.entrySet()) {
+			int index = this.indexOf(entry.getKey());
+
+			this.keys[index] = entry.getKey();
+			this.values[index] = entry.getValue();
+		}
+	}
+
+	/**
+	 * @return the value of the given class, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(Class<?> clazz) {
+		return (V)this.values[this.indexOf(clazz)];
+	}
+
+	boolean containsKey(Class<?> clazz) {
+		return this.keys[this.indexOf(clazz)] != null;
+	}
+
+	/**
+	 * @return the index holding the given class, or the empty index it would be put at.
+	 */
+	private int indexOf(Class<?> clazz) {
+		int hash = clazz.hashCode();
+		int index = (hash ^ (hash >>> 16)) & this.mask;
+
+		while (this.keys[index] != null && this.keys[index] != clazz) {
+			index = (index + 1) & this.mask;
+		}
+
+		return index;
+	}
+}
@@ -0,0 +1,667 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>
+ * Generates objects for the Injector without recursing: the objects an object depends on
+ * directly are generated bottom-up from an explicit stack of frames, one for each object
+ * under construction, so that deep object graphs do not overflow the call stack. Each
+ * thread has its own resolver, whose frames are reused from one object to the next.
+ * </p>
+ *
+ * <p>
+ * A frame resolves the arguments of the injection constructor of its class, constructs the
+ * object, resolves its dependency fields and calls its initializers, in that order. The lock
+ * of a singleton is held until its dependencies are satisfied, so that it is constructed
+ * once. A singleton without initializers is then published to its scope. A singleton with
+ * initializers is published before they are called, as not ready yet (see
+ * AsyncInitialization), and its lock released: an initializer may need, through a Provider or
+ * a lazy proxy, a singleton being constructed on another thread which needs this one. Other
+ * threads requesting it wait until it is ready, but for threads generating objects
+ * themselves, which take it as it is, as the thread calling its initializers does.
+ * </p>
+ *
+ * <p>
+ * A thread about to wait for the lock of a singleton first checks whether the thread
+ * holding it waits, directly or not, for a lock the thread holds, which would be the case if
+ * a Provider is used while a singleton is being constructed; it then fails with the classes
+ * of those locks rather than waiting for good.
+ * </p>
+ *
+ * <p>
+ * A class compiled by FactoryCompiler is generated by its compiled factory, once a frame has
+ * resolved the objects it depends on directly. A generated factory (see InjectorFactory)
+ * assigns the dependency fields of its objects itself when they are all mapped to objects
+ * already; otherwise the frame resolves them. Providers, lazy proxies and initializers
+ * generate the objects they need through the Injector again; these nest on the same stack.
+ * Dependency cycles are found by DependencyGraph before the first frame is pushed, or by
+ * the frames in progress if class mappings change while objects are being generated.
+ * </p>
+ */
+final class GraphResolver {
+
+	private static final ThreadLocal<GraphResolver> resolvers = new ThreadLocal<GraphResolver>() {
+		@Override
+		protected GraphResolver initialValue() {
+			return new GraphResolver();
+		}
+	};
+
+	/**
+	 * One lock per singleton class, so that each singleton is constructed exactly once,
+	 * while unrelated singletons can still be constructed in parallel. A frame holds the lock
+	 * of its singleton from push until it is published, which are not in the same block.
+	 */
+	private static final ClassValue<SingletonLock> singletonLocks = new ClassValue<SingletonLock>() {
+		@Override
+		protected SingletonLock computeValue(Class<?> type) {
+			return new SingletonLock(type);
+		}
+	};
+
+	/**
+	 * The lock each thread waiting for the lock of a singleton waits for.
+	 */
+	private static final ConcurrentMap<Thread, SingletonLock> waitingThreads = new ConcurrentHashMap<Thread, SingletonLock>();
+
+	/**
+	 * Phases of a frame: resolving constructor arguments, constructing, resolving fields; or
+	 * resolving the dependencies of a compiled factory.
+	 */
+	private static final int CONSTRUCTOR = 0;
+
+	private static final int CONSTRUCT = 1;
+
+	private static final int FIELDS = 2;
+
+	private static final int COMPILED = 3;
+
+	/**
+	 * Stands for no value being handed to the frame on top, as a frame has been pushed or
+	 * has moved on to its next phase.
+	 */
+	private static final Object NOTHING = new Object();
+
+	private Frame[] frames = new Frame[16];
+
+	private int size;
+
+	/**
+	 * The classes of the frames on the stack.
+	 */
+	private final Map<Class<?>, Object> inProgress = new IdentityHashMap<Class<?>, Object>();
+
+	private GraphResolver() {
+	}
+
+	/**
+	 * Generates (or retrieves) an object for the class, see Injector.generateObjectForClass().
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T resolve(Class<T> clazz) {
+		return (T)resolvers.get().generate(clazz);
+	}
+
+	private Object generate(Class<?> clazz) {
+		int base = this.size;
+
+		try {
+			Object value = this.push(clazz);
+
+			// Hand each value to the frame on top, which asked for it, and move that frame
+			// on, until the frame pushed for the class is popped.
+
+			while (this.size > base) {
+				Frame frame = this.frames[this.size - 1];
+
+				if (value != NOTHING) {
+					frame.accept(value);
+				}
+
+				value = this.advance(frame);
+			}
+
+			return value;
+		} finally {
+			if (this.size > base) {
+				this.unwind(base);
+			}
+		}
+	}
+
+	/**
+	 * Finds the object for the class, or pushes a frame to generate it.
+	 *
+	 * @return the object, or NOTHING if a frame has been pushed.
+	 */
+	private Object push(Class<?> clazz) {
+		long start = Instrumentation.enabled() ? System.nanoTime() : 0;
+		Object event = start != 0 ? Instrumentation.begin(Instrumentation.OBJECT_GENERATED) : null;
+		InjectionPlan plan = InjectionPlan.forClass(clazz);
+		Scope scope = Scope.current();
+		Object mappedObject = plan.isSingleton() ? scope.findSingleton(clazz) : scope.findObject(clazz);
+		SingletonLock lock = null;
+		FactoryCompiler.CompiledFactory compiledFactory = null;
+
+		if (plan.isSingleton()) {
+			// Class is mapped to object, either by us (the expected case) or by someone
+			// else (also legal, just not expected to be typical) so we will readily use
+			// that. Its dependencies should have been satisfied by whoever mapped it. The
+			// object is looked up once, as a singleton which is not Retained STRONG may be
+			// let go in between lookups.
+			if (mappedObject == null) {
+				// Another thread may have constructed it meanwhile.
+				lock = singletonLocks.get(clazz);
+				GraphResolver.acquire(lock);
+				mappedObject = scope.findSingleton(clazz);
+
+				if (mappedObject != null) {
+					lock.unlock();
+					lock = null;
+				}
+
+				if (start != 0) {
+					Instrumentation.singletonLookup(clazz, mappedObject != null);
+				}
+			} else if (start != 0) {
+				Instrumentation.singletonLookup(clazz, true);
+			}
+
+			if (mappedObject != null) {
+				AsyncInitialization.singletonFound(mappedObject, this.size == 0);
+				return this.generated(clazz, start, event, mappedObject);
+			}
+		} else if (mappedObject != null) {
+			// Regular ObjectFactory rules apply here; even if the class is not marked as a
+			// singleton, it may act as one if it is mapped to an object externally.
+			Injector.satisfyDependencies(mappedObject);
+			return this.generated(clazz, start, event, mappedObject);
+		} else {
+			ObjectPool pool = plan.getPool();
+
+			if (pool != null) {
+				// Pooled objects had their dependencies satisfied when they were first
+				// generated.
+				Object pooledObject = pool.acquire(scope);
+
+				if (pooledObject != null) {
+					return this.generated(clazz, start, event, pooledObject);
+				}
+			}
+
+			// Once a class has been generated often enough, it is generated by a compiled
+			// factory instead, which does what a frame does in one go but resolving its
+			// dependencies. Listeners and asynchronous generation need the steps to be taken
+			// one by one, though.
+			compiledFactory = plan.getCompiledFactory();
+
+			if (compiledFactory != null && (start != 0 || AsyncInitialization.isActive() || scope.findClass(clazz) != null)) {
+				compiledFactory = null;
+			}
+
+			if (compiledFactory != null && compiledFactory.getDependencyCount() == 0) {
+				this.checkAcyclic(clazz);
+				return compiledFactory.invoke(clazz, new Object[0]);
+			}
+		}
+
+		try {
+			this.checkAcyclic(clazz);
+
+			Frame frame = this.pushFrame();
+			frame.clazz = clazz;
+			frame.lock = lock;
+			lock = null;
+			this.inProgress.put(clazz, clazz);
+
+			frame.singleton = plan.isSingleton();
+			frame.start = start;
+			frame.event = event;
+
+			if (compiledFactory != null) {
+				frame.phase = COMPILED;
+				frame.compiledFactory = compiledFactory;
+				frame.arguments = new Object[compiledFactory.getDependencyCount()];
+
+				return NOTHING;
+			}
+
+			InjectionPlan actualPlan = InjectionPlan.forClass(ObjectFactory.resolveClass(clazz));
+
+			// A class with a generated factory is constructed by it, as ObjectFactory would.
+			if (actualPlan.getGeneratedFactory() == null && actualPlan.getInjectionConstructor() != null) {
+				frame.phase = CONSTRUCTOR;
+				frame.plan = actualPlan;
+				frame.arguments = new Object[actualPlan.getConstructorDependencyCount()];
+			} else {
+				frame.phase = CONSTRUCT;
+			}
+
+			return NOTHING;
+		} finally {
+			if (lock != null) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Checks for dependency cycles through the class: the whole graph of the class before
+	 * the first frame is pushed, the frames in progress after.
+	 */
+	private void checkAcyclic(Class<?> clazz) {
+		if (this.size == 0) {
+			DependencyGraph.checkAcyclic(clazz);
+		} else if (this.inProgress.containsKey(clazz)) {
+			List<Class<?>> cycle = new ArrayList<Class<?>>();
+			boolean onCycle = false;
+
+			for (int i = 0; i < this.size; i++) {
+				onCycle |= this.frames[i].clazz == clazz;
+
+				if (onCycle) {
+					cycle.add(this.frames[i].clazz);
+				}
+			}
+
+			cycle.add(clazz);
+
+			throw new InjectionException(DependencyGraph.describe(cycle));
+		}
+	}
+
+	private Frame pushFrame() {
+		if (this.size == this.frames.length) {
+			this.frames = Arrays.copyOf(this.frames, this.size * 2);
+		}
+
+		Frame frame = this.frames[this.size];
+
+		if (frame == null) {
+			frame = new Frame();
+			this.frames[this.size] = frame;
+		}
+
+		this.size++;
+
+		return frame;
+	}
+
+	/**
+	 * Takes the frame on to its next dependency or phase.
+	 *
+	 * @return the value of the dependency, or NOTHING if a frame has been pushed for it or
+	 *         the frame has moved on to its next phase; the object of the frame once it has
+	 *         been popped.
+	 */
+	private Object advance(Frame frame) {
+		InjectionPlan plan = frame.plan;
+
+		switch (frame.phase) {
+		case CONSTRUCTOR:
+			if (frame.index < frame.arguments.length) {
+				return this.dependency(plan.getConstructorDependencyKind(frame.index), plan.getConstructorDependencyType(frame.index));
+			}
+
+			Object[] arguments = frame.arguments;
+			frame.arguments = null;
+			this.constructed(frame, ObjectFactory.invokeConstructor(plan.getInjectionConstructor(), arguments));
+
+			return NOTHING;
+		case CONSTRUCT:
+			this.constructed(frame, ObjectFactory.constructObject(frame.clazz));
+
+			return NOTHING;
+		case COMPILED:
+			if (frame.index < frame.arguments.length) {
+				return this.push(frame.compiledFactory.getDependencyType(frame.index));
+			}
+
+			Object object = frame.compiledFactory.invoke(frame.clazz, frame.arguments);
+			this.pop();
+
+			return object;
+		default:
+			if (frame.generatedFactory == null && frame.index < plan.getDependencyCount()) {
+				return this.dependency(plan.getDependencyKind(frame.index), plan.getDependencyType(frame.index));
+			}
+
+			return this.complete(frame);
+		}
+	}
+
+	private Object dependency(InjectionPlan.DependencyKind kind, Class<?> type) {
+		if (kind == InjectionPlan.DependencyKind.DIRECT) {
+			return this.push(type);
+		}
+
+		return Injector.resolveDependency(kind, type);
+	}
+
+	private void constructed(Frame frame, Object object) {
+		frame.object = object;
+		frame.plan = InjectionPlan.forClass(object.getClass());
+		frame.phase = FIELDS;
+		frame.index = 0;
+		frame.satisfyStart = Instrumentation.enabled() ? System.nanoTime() : 0;
+		frame.satisfyEvent = frame.satisfyStart != 0 ? Instrumentation.begin(Instrumentation.DEPENDENCIES_SATISFIED) : null;
+		frame.asyncFrame = AsyncInitialization.enter();
+
+		// The generated factory gets the objects it depends on from the Injector; when they
+		// are all mapped to objects already, it finds them without nesting any further. It
+		// calls the initializers too, which are not called with the lock of a singleton held.
+		InjectorFactory<Object> generatedFactory = frame.plan.getGeneratedFactory();
+
+		if (generatedFactory != null && !(frame.singleton && frame.plan.getInitializerCount() > 0)
+				&& GraphResolver.directDependenciesMapped(frame.plan)) {
+			frame.generatedFactory = generatedFactory;
+			generatedFactory.injectDependencies(object);
+		}
+	}
+
+	/**
+	 * @return true if the class of the plan depends directly only on classes mapped to objects
+	 *         in the current scope.
+	 */
+	private static boolean directDependenciesMapped(InjectionPlan plan) {
+		Scope scope = Scope.current();
+
+		for (int i = 0; i < plan.getDependencyCount(); i++) {
+			if (plan.getDependencyKind(i) == InjectionPlan.DependencyKind.DIRECT && scope.findObject(plan.getDependencyType(i)) == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Calls the initializers of the object of the frame, publishes it if it is a singleton,
+	 * and pops the frame.
+	 */
+	private Object complete(Frame frame) {
+		Object object = frame.object;
+		Class<?> clazz = frame.clazz;
+		AsyncInitialization.Frame asyncFrame = frame.asyncFrame;
+		// Generated factories call the initializers themselves.
+		InjectionPlan plan = frame.generatedFactory != null ? null : frame.plan;
+		CompletableFuture<Object> initialized = null;
+		CompletableFuture<?> ready = null;
+
+		if (frame.singleton && plan != null && plan.getInitializerCount() > 0) {
+			initialized = new CompletableFuture<Object>();
+			GraphResolver.publish(clazz, object, initialized);
+			frame.lock.unlock();
+			frame.lock = null;
+		}
+
+		try {
+			if (asyncFrame != null) {
+				frame.asyncFrame = null;
+				ready = AsyncInitialization.exit(asyncFrame, plan, object);
+			} else if (plan != null) {
+				Injector.invokeInitializers(plan, object);
+			}
+		} catch (RuntimeException e) {
+			GraphResolver.fail(initialized, e);
+			throw e;
+		} catch (Error e) {
+			GraphResolver.fail(initialized, e);
+			throw e;
+		}
+
+		if (frame.satisfyStart != 0) {
+			Instrumentation.dependenciesSatisfied(object.getClass(), frame.satisfyStart, frame.satisfyEvent);
+		}
+
+		if (initialized != null) {
+			GraphResolver.completeWith(initialized, ready, object);
+		} else if (frame.singleton) {
+			GraphResolver.publish(clazz, object, ready);
+		}
+
+		long start = frame.start;
+		Object event = frame.event;
+		this.pop();
+
+		return this.generated(clazz, start, event, object);
+	}
+
+	/**
+	 * Publishes a singleton to the scope owning it.
+	 *
+	 * @param ready a future completing when the singleton is ready, or null if it is ready.
+	 */
+	private static void publish(Class<?> clazz, Object object, CompletableFuture<?> ready) {
+		Scope owner = Scope.current().singletonOwner(clazz);
+		Retained retained = InjectionPlan.forClass(clazz).getRetention();
+
+		if (ready != null) {
+			AsyncInitialization.singletonConstructed(owner, clazz, object, retained, ready);
+		} else {
+			owner.putSingleton(clazz, object, retained);
+		}
+	}
+
+	private static void fail(CompletableFuture<Object> initialized, Throwable throwable) {
+		if (initialized != null) {
+			initialized.completeExceptionally(throwable);
+		}
+	}
+
+	/**
+	 * Completes the future of a singleton published before its initializers were called, once
+	 * they have completed.
+	 *
+	 * @param ready a future completing when the asynchronous initializers have completed, or
+	 *        null if they have.
+	 */
+	private static void completeWith(final CompletableFuture<Object> initialized, CompletableFuture<?> ready, final Object object) {
+		if (ready == null) {
+			initialized.complete(object);
+			return;
+		}
+
+		ready.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable throwable) {
+				if (throwable != null) {
+					initialized.completeExceptionally(throwable);
+				} else {
+					initialized.complete(object);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Takes the lock of a singleton, failing if it is held by a thread waiting for this one.
+	 */
+	private static void acquire(SingletonLock lock) {
+		if (lock.tryLock()) {
+			return;
+		}
+
+		Thread thread = Thread.currentThread();
+
+		// Waiting is announced before the check, so that of two threads about to wait for
+		// each other, the second one to check sees the first one waiting.
+		waitingThreads.put(thread, lock);
+
+		try {
+			List<Class<?>> cycle = GraphResolver.waitCycle(thread, lock);
+
+			if (cycle != null) {
+				throw new InjectionException(DependencyGraph.describeWaits(cycle));
+			}
+
+			lock.lock();
+		} finally {
+			waitingThreads.remove(thread);
+		}
+	}
+
+	/**
+	 * @return the classes of the locks the threads wait for, from the lock the thread is about
+	 *         to wait for to the one held by the thread, the first one repeated at the end; null
+	 *         if the threads do not wait for the thread.
+	 */
+	private static List<Class<?>> waitCycle(Thread thread, SingletonLock lock) {
+		List<Class<?>> cycle = new ArrayList<Class<?>>();
+		SingletonLock next = lock;
+
+		// The threads may stop waiting meanwhile, making a chain which is not a cycle; it
+		// can not be longer than the number of waiting threads, though.
+		while (next != null && cycle.size() <= waitingThreads.size()) {
+			Thread owner = next.owner();
+
+			if (owner == null) {
+				return null;
+			}
+
+			cycle.add(next.type);
+
+			if (owner == thread) {
+				cycle.add(lock.type);
+				return cycle;
+			}
+
+			next = waitingThreads.get(owner);
+		}
+
+		return null;
+	}
+
+	private Object generated(Class<?> clazz, long start, Object event, Object object) {
+		if (start != 0) {
+			Instrumentation.objectGenerated(clazz, start, event);
+		}
+
+		return object;
+	}
+
+	private void pop() {
+		Frame frame = this.frames[--this.size];
+		this.inProgress.remove(frame.clazz);
+
+		if (frame.lock != null) {
+			frame.lock.unlock();
+		}
+
+		frame.clear();
+	}
+
+	/**
+	 * Pops the frames above the base after a failure, releasing what they hold. The objects
+	 * of the frames are dropped; singletons among them are constructed anew on their next
+	 * request.
+	 */
+	private void unwind(int base) {
+		while (this.size > base) {
+			Frame frame = this.frames[this.size - 1];
+			AsyncInitialization.abandon(frame.asyncFrame);
+
+			this.pop();
+		}
+	}
+
+	/**
+	 * An object under construction.
+	 */
+	private static final class Frame {
+
+		private Class<?> clazz;
+
+		private boolean singleton;
+
+		/**
+		 * The lock of the singleton, held until the singleton is published or the frame is
+		 * popped; null if it is not a singleton, or once it is released.
+		 */
+		private SingletonLock lock;
+
+		private int phase;
+
+		/**
+		 * The constructor argument or dependency field resolved next.
+		 */
+		private int index;
+
+		/**
+		 * The plan of the constructed class: resolved from the class before the object is
+		 * constructed, of the class of the object after.
+		 */
+		private InjectionPlan plan;
+
+		private Object[] arguments;
+
+		private Object object;
+
+		private InjectorFactory<Object> generatedFactory;
+
+		private FactoryCompiler.CompiledFactory compiledFactory;
+
+		private AsyncInitialization.Frame asyncFrame;
+
+		private long start;
+
+		private long satisfyStart;
+
+		/**
+		 * The flight recorder events begun with start and satisfyStart, if any (see
+		 * Instrumentation.begin()).
+		 */
+		private Object event;
+
+		private Object satisfyEvent;
+
+		void accept(Object value) {
+			if (this.phase == CONSTRUCTOR || this.phase == COMPILED) {
+				this.arguments[this.index++] = value;
+			} else {
+				Injector.assignField(this.plan, this.index++, this.object, value);
+			}
+		}
+
+		void clear() {
+			this.clazz = null;
+			this.lock = null;
+			this.index = 0;
+			this.plan = null;
+			this.arguments = null;
+			this.object = null;
+			this.generatedFactory = null;
+			this.compiledFactory = null;
+			this.asyncFrame = null;
+			this.event = null;
+			this.satisfyEvent = null;
+		}
+	}
+
+	/**
+	 * The lock of a singleton class, telling which thread holds it.
+	 */
+	@SuppressWarnings("serial")
+	private static final class SingletonLock extends ReentrantLock {
+
+		private final Class<?> type;
+
+		SingletonLock(Class<?> type) {
+			this.type = type;
+		}
+
+		Thread owner() {
+			return this.getOwner();
+		}
+	}
+}
@@ -5,8 +5,24 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * <p>
+ * Marks a public no-argument method to be called once the dependencies of its object have
+ * been satisfied.
+ * </p>
+ * 
+ * <p>
+ * An initializer marked async, or returning a CompletionStage, is asynchronous. When the
+ * object is generated with Injector.generateObjectForClassAsync(), the initializers of an
+ * object with asynchronous initializers are called on the initializer executor (see 
+ * Injector.setInitializerExecutor()) once the initializers of its dependencies have 
+ * completed, and the object is ready once the CompletionStages they return complete. 
+ * Otherwise, they are called like other initializers, and the CompletionStages they return
+ * are waited for.
+ * </p>
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Initializer {
-
+	boolean async() default false;
 }
@@ -0,0 +1,154 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The index of injectable classes, written at compile time by the processor module to
+ * META-INF/sydependencyinjector.index in each jar (or classes directory). It lists the
+ * singleton classes, and the class to class bindings declared with @Registry, so that
+ * they can be registered at startup without classpath scanning.
+ * </p>
+ * 
+ * <p>
+ * The file is a list of lines, each either "singleton &lt;class&gt;" or "binding
+ * &lt;class&gt; &lt;implementation class&gt;", with binary class names. Empty lines and
+ * lines starting with # are ignored. A class bound to different implementations, in the
+ * same file or in different ones, makes loading fail.
+ * </p>
+ */
+public final class InjectionIndex {
+	
+	public static final String RESOURCE_NAME = "META-INF/sydependencyinjector.index";
+	
+	private final List<Class<?>> singletonClasses;
+	
+	private final Map<Class<?>, Class<?>> bindings;
+	
+	private InjectionIndex(List<Class<?>> singletonClasses, Map<Class<?>, Class<?>> bindings) {
+		this.singletonClasses = Collections.unmodifiableList(singletonClasses);
+		this.bindings = Collections.unmodifiableMap(bindings);
+	}
+	
+	/**
+	 * Loads the index files visible to the context class loader of the current thread
+	 * (or to the class loader of this class, if there is none).
+	 * 
+	 * @return the combined index
+	 */
+	public static InjectionIndex load() {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		
+		if (classLoader == null) {
+			classLoader = InjectionIndex.class.getClassLoader();
+		}
+		
+		return load(classLoader);
+	}
+	
+	/**
+	 * Loads all index files visible to the given class loader, and combines them.
+	 * 
+	 * @param classLoader the class loader to read the index files and load the classes with
+	 * @return the combined index
+	 */
+	public static InjectionIndex load(ClassLoader classLoader) {
+		List<Class<?>> singletonClasses = new ArrayList<Class<?>>();
+		Map<Class<?>, Class<?>> bindings = new LinkedHashMap<Class<?>, Class<?>>();
+		
+		try {
+			Enumeration<URL> resources = classLoader.getResources(RESOURCE_NAME);
+			
+			while (resources.hasMoreElements()) {
+				read(resources.nextElement(), classLoader, singletonClasses, bindings);
+			}
+		} catch (IOException e) {
+			throw new InjectionException("Failed reading " + RESOURCE_NAME, e);
+		}
+		
+		return new InjectionIndex(singletonClasses, bindings);
+	}
+	
+	private static void read(URL resource, ClassLoader classLoader, List<Class<?>> singletonClasses, Map<Class<?>, Class<?>> bindings) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), "UTF-8"));
+		
+		try {
+			String line;
+			
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				
+				String[] parts = line.split("\\s+");
+				
+				if (parts[0].equals("singleton") && parts.length == 2) {
+					singletonClasses.add(loadClass(parts[1], classLoader, resource));
+				} else if (parts[0].equals("binding") && parts.length == 3) {
+					Class<?> clazz = loadClass(parts[1], classLoader, resource);
+					Class<?> implementation = loadClass(parts[2], classLoader, resource);
+					
+					if (!clazz.isAssignableFrom(implementation)) {
+						throw new InjectionException("Invalid binding in " + resource + ": " + implementation.getName() 
+													 + " is not a " + clazz.getName());
+					}
+					
+					Class<?> previous = bindings.put(clazz, implementation);
+					
+					if (previous != null && previous != implementation) {
+						throw new InjectionException("Conflicting bindings in " + resource + ": " + clazz.getName() 
+													 + " is bound to both " + previous.getName() + " and " + implementation.getName());
+					}
+				} else {
+					throw new InjectionException("Invalid line in " + resource + ": " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+	
+	private static Class<?> loadClass(String name, ClassLoader classLoader, URL resource) {
+		try {
+			return Class.forName(name, false, classLoader);
+		} catch (ClassNotFoundException e) {
+			throw new InjectionException("Class " + name + " listed in " + resource + " not found", e);
+		}
+	}
+	
+	/**
+	 * @return the classes annotated with @Singleton, for instance to be passed to
+	 *         Injector.warmUpSingletons().
+	 */
+	public List<Class<?>> getSingletonClasses() {
+		return this.singletonClasses;
+	}
+	
+	/**
+	 * @return the bindings declared with @Registry, from class to implementation class.
+	 */
+	public Map<Class<?>, Class<?>> getBindings() {
+		return this.bindings;
+	}
+	
+	/**
+	 * Registers all bindings of the index with ObjectFactory.mapClassToClass().
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void registerBindings() {
+		for (Map.Entry<Class<?>, Class<?>> binding : this.bindings.entrySet()) {
+			ObjectFactory.mapClassToClass((Class)binding.getKey(), (Class)binding.getValue());
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.safkanyazilim.dependencyinjection;
+
+/**
+ * <p>
+ * Receives timings from the hot paths of Injector and ObjectFactory. Register listeners
+ * with Injector.addInjectionListener(); InjectionMetrics and JfrInjectionListener are the
+ * listeners provided. While no listener is registered, the hot paths do not even read
+ * the clock.
+ * </p>
+ * 
+ * <p>
+ * Listeners are called on the injecting thread, possibly concurrently, and should return
+ * quickly. All durations are in nanoseconds.
+ * </p>
+ */
+public interface InjectionListener {
+	
+	/**
+	 * An object was generated (or a singleton retrieved) for the given class, including
+	 * the satisfaction of its dependencies.
+	 */
+	public void objectGenerated(Class<?> clazz, long nanos);
+	
+	/**
+	 * The dependencies of an object of the given class were satisfied, and its initializers
+	 * called.
+	 */
+	public void dependenciesSatisfied(Class<?> clazz, long nanos);
+	
+	/**
+	 * A constructor of the given class (or the factory generated for it) was invoked.
+	 */
+	public void constructorInvoked(Class<?> clazz, long nanos);
+	
+	/**
+	 * The initializer with the given name of an object of the given class was called. Not
+	 * reported for classes with a generated factory.
+	 */
+	public void initializerInvoked(Class<?> clazz, String methodName, long nanos);
+	
+	/**
+	 * A singleton of the given class was looked up; hit is true if it already existed.
+	 */
+	public void singletonLookup(Class<?> clazz, boolean hit);
+}
@@ -0,0 +1,116 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * <p>
+ * An InjectionListener collecting per-class counters and latency histograms, and the
+ * singleton cache hit ratio. Recording is lock-free.
+ * </p>
+ * 
+ * <pre>
+ * InjectionMetrics metrics = new InjectionMetrics();
+ * Injector.addInjectionListener(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ */
+public class InjectionMetrics implements InjectionListener {
+	
+	/**
+	 * Kept with the classes, so that recording metrics does not keep them from being
+	 * unloaded.
+	 */
+	private final WeakClassMap<ClassMetrics> classMetrics = new WeakClassMap<ClassMetrics>();
+	
+	/**
+	 * @return the metrics of the given class, or null if nothing was recorded for it.
+	 */
+	public ClassMetrics getClassMetrics(Class<?> clazz) {
+		return this.classMetrics.get(clazz);
+	}
+	
+	/**
+	 * @return the metrics of all classes for which something was recorded.
+	 */
+	public Map<Class<?>, ClassMetrics> getAllClassMetrics() {
+		return Collections.unmodifiableMap(this.classMetrics);
+	}
+	
+	/**
+	 * @return the ratio of singleton lookups which found an existing singleton, over all
+	 *         classes.
+	 */
+	public double getSingletonHitRatio() {
+		long hits = 0;
+		long lookups = 0;
+		
+		for (ClassMetrics metrics : this.classMetrics.values()) {
+			hits += metrics.getSingletonHits();
+			lookups += metrics.getSingletonHits() + metrics.getSingletonMisses();
+		}
+		
+		return lookups == 0 ? 0 : (double)hits / lookups;
+	}
+	
+	/**
+	 * Discards everything recorded so far.
+	 */
+	public void reset() {
+		this.classMetrics.clear();
+	}
+	
+	private ClassMetrics metricsOf(Class<?> clazz) {
+		ClassMetrics metrics = this.classMetrics.get(clazz);
+		
+		if (metrics == null) {
+			metrics = new ClassMetrics();
+			ClassMetrics existing = this.classMetrics.putIfAbsent(clazz, metrics);
+			
+			if (existing != null) {
+				metrics = existing;
+			}
+		}
+		
+		return metrics;
+	}
+	
+	@Override
+	public void objectGenerated(Class<?> clazz, long nanos) {
+		this.metricsOf(clazz).getObjectGeneration().record(nanos);
+	}
+	
+	@Override
+	public void dependenciesSatisfied(Class<?> clazz, long nanos) {
+		this.metricsOf(clazz).getDependencySatisfaction().record(nanos);
+	}
+	
+	@Override
+	public void constructorInvoked(Class<?> clazz, long nanos) {
+		this.metricsOf(clazz).getConstructorInvocation().record(nanos);
+	}
+	
+	@Override
+	public void initializerInvoked(Class<?> clazz, String methodName, long nanos) {
+		this.metricsOf(clazz).initializerInvocation(methodName).record(nanos);
+	}
+	
+	@Override
+	public void singletonLookup(Class<?> clazz, boolean hit) {
+		this.metricsOf(clazz).singletonLookup(hit);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append("Singleton hit ratio ").append(this.getSingletonHitRatio());
+		
+		for (Map.Entry<Class<?>, ClassMetrics> entry : this.classMetrics.entrySet()) {
+			builder.append("\n").append(entry.getKey().getName()).append("\n  ").append(entry.getValue());
+		}
+		
+		return builder.toString();
+	}
+}
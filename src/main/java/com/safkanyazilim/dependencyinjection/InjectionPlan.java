@@ -0,0 +1,550 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The injection plan of a class: its dependency fields (with their target types), its
+ * initializer and reset methods, the constructor it is constructed with (with the target
+ * types of its parameters), and its pool if it is Pooled. The plan is computed once per
+ * class by reflection, and then cached, so that repeatedly injecting objects of the same
+ * type does not perform any reflection lookups.
+ * </p>
+ *
+ * <p>
+ * If a factory generated at compile time (see InjectorFactory) exists for the class, it is
+ * used instead, and the reflective part of the plan is only computed if it is asked for.
+ * </p>
+ *
+ * <p>
+ * The members a plan describes do not change once they are found, and plans are held in a
+ * ClassValue so they do not prevent the class from being unloaded. Plans also keep state
+ * built up as the class is used: its setter handles, the count of its generations until
+ * it is compiled and its compiled factory. All of it can be updated by several threads at
+ * once.
+ * </p>
+ *
+ * <p>
+ * The reflective part of plans can be kept in a file across JVM restarts, see PlanCache.
+ * </p>
+ */
+final class InjectionPlan {
+
+	private static final ClassValue<InjectionPlan> plans = new ClassValue<InjectionPlan>() {
+		@Override
+		protected InjectionPlan computeValue(Class<?> type) {
+			return new InjectionPlan(type);
+		}
+	};
+
+	private final Class<?> type;
+
+	private final boolean singleton;
+
+	private final ObjectPool pool;
+
+	private final Retained retained;
+
+	private final InjectorFactory<Object> generatedFactory;
+
+	/**
+	 * The reflective part of the plan, created on first use. Racing threads may create it
+	 * more than once, which is harmless.
+	 */
+	private volatile Members members;
+
+	/**
+	 * The number of times the class has been generated through the Injector, counted until
+	 * it reaches the compile threshold; once the class is compiled (or found not to be
+	 * compilable), it is no longer updated.
+	 */
+	private final AtomicInteger generationCount = new AtomicInteger();
+
+	/**
+	 * The factory compiled by FactoryCompiler once the compile threshold is reached; null
+	 * before, or if the class can not be compiled.
+	 */
+	private volatile FactoryCompiler.CompiledFactory compiledFactory;
+
+	private volatile boolean compiled;
+
+	/**
+	 * Setter handles for the dependency fields, created on first use by the METHOD_HANDLE
+	 * accessor engine. Racing threads may create them more than once, which is harmless.
+	 */
+	private volatile MethodHandle[] dependencySetters;
+
+	private InjectionPlan(Class<?> type) {
+		this.type = type;
+		this.singleton = type.getAnnotation(Singleton.class) != null;
+		this.pool = createPool(type, this.singleton);
+		this.retained = findRetention(type, this.singleton);
+		this.generatedFactory = findGeneratedFactory(type);
+	}
+
+	/**
+	 * Returns the (cached) injection plan of the given class.
+	 *
+	 * @param clazz the class
+	 * @return the injection plan of the class
+	 */
+	static InjectionPlan forClass(Class<?> clazz) {
+		return plans.get(clazz);
+	}
+
+	private static ObjectPool createPool(Class<?> type, boolean singleton) {
+		Pooled pooled = type.getAnnotation(Pooled.class);
+
+		if (pooled == null) {
+			return null;
+		}
+
+		if (singleton) {
+			throw new InjectionException(type.getCanonicalName() + " can not be both Singleton and Pooled");
+		}
+
+		if (pooled.maxSize() <= 0) {
+			throw new InjectionException("Pool size of " + type.getCanonicalName() + " is not positive");
+		}
+
+		return new ObjectPool(pooled.maxSize());
+	}
+
+	private static Retained findRetention(Class<?> type, boolean singleton) {
+		Retained retained = type.getAnnotation(Retained.class);
+
+		if (retained == null) {
+			return null;
+		}
+
+		if (!singleton) {
+			throw new InjectionException(type.getCanonicalName() + " is Retained, but it is not a Singleton");
+		}
+
+		if (retained.value() == Retained.Policy.IDLE && retained.idleMillis() <= 0) {
+			throw new InjectionException("Idle time of " + type.getCanonicalName() + " is not positive");
+		}
+
+		return retained;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static InjectorFactory<Object> findGeneratedFactory(Class<?> clazz) {
+		ClassLoader classLoader = clazz.getClassLoader();
+
+		if (classLoader == null || clazz.isInterface() || clazz.isArray() || clazz.isPrimitive()) {
+			return null;
+		}
+
+		Class<?> factoryClass;
+
+		try {
+			factoryClass = Class.forName(clazz.getName() + InjectorFactory.CLASS_NAME_SUFFIX, true, classLoader);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+
+		if (!InjectorFactory.class.isAssignableFrom(factoryClass)) {
+			return null;
+		}
+
+		// The factory generated for a class produces objects of that class; the type argument
+		// can not be checked at runtime.
+		try {
+			return factoryClass.asSubclass(InjectorFactory.class).getDeclaredConstructor().newInstance();
+		} catch (NoSuchMethodException e) {
+			throw new InjectionException("Failed instantiating generated factory " + factoryClass.getName(), e);
+		} catch (InvocationTargetException e) {
+			throw new InjectionException("Failed instantiating generated factory " + factoryClass.getName(), e);
+		} catch (InstantiationException e) {
+			throw new InjectionException("Failed instantiating generated factory " + factoryClass.getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new InjectionException("Failed instantiating generated factory " + factoryClass.getName(), e);
+		}
+	}
+
+	private Members members() {
+		Members members = this.members;
+
+		if (members == null) {
+			members = PlanCache.members(this.type);
+			this.members = members;
+		}
+
+		return members;
+	}
+
+	Class<?> getType() {
+		return this.type;
+	}
+
+	boolean isSingleton() {
+		return this.singleton;
+	}
+
+	/**
+	 * @return the pool of the class, or null if it is not Pooled.
+	 */
+	ObjectPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * @return how a singleton of the class is kept, or null if it is not Retained (that is,
+	 *         it is kept STRONG).
+	 */
+	Retained getRetention() {
+		return this.retained;
+	}
+
+	/**
+	 * @return the factory generated at compile time for the class, or null if there is none.
+	 */
+	InjectorFactory<Object> getGeneratedFactory() {
+		return this.generatedFactory;
+	}
+
+	int getDependencyCount() {
+		return this.members().dependencyFields.length;
+	}
+
+	Field getDependencyField(int index) {
+		return this.members().dependencyFields[index];
+	}
+
+	Class<?> getDependencyType(int index) {
+		return this.members().dependencyTypes[index];
+	}
+
+	/**
+	 * @return how the dependency field with the given index is assigned; its dependency
+	 *         type is the class of the object assigned, or provided lazily.
+	 */
+	DependencyKind getDependencyKind(int index) {
+		return this.members().dependencyKinds[index];
+	}
+
+	/**
+	 * @return the setter handle for the dependency field with the given index, or null if
+	 *         the field can only be assigned reflectively.
+	 */
+	MethodHandle getDependencySetter(int index) {
+		MethodHandle[] setters = this.dependencySetters;
+
+		if (setters == null) {
+			Field[] fields = this.members().dependencyFields;
+			setters = new MethodHandle[fields.length];
+
+			for (int i = 0; i < setters.length; i++) {
+				setters[i] = MethodHandleAccessors.setterHandle(fields[i]);
+			}
+
+			this.dependencySetters = setters;
+		}
+
+		return setters[index];
+	}
+
+	/**
+	 * Counts a generation of the class, and returns its compiled factory once it has been
+	 * generated as many times as the compile threshold.
+	 *
+	 * @return the compiled factory of the class, or null if it is not compiled (yet).
+	 */
+	FactoryCompiler.CompiledFactory getCompiledFactory() {
+		if (this.compiled) {
+			return this.compiledFactory;
+		}
+
+		int threshold = FactoryCompiler.getThreshold();
+
+		if (threshold <= 0 || this.generationCount.incrementAndGet() < threshold) {
+			return null;
+		}
+
+		synchronized (this) {
+			if (!this.compiled) {
+				this.compiledFactory = FactoryCompiler.compile(this);
+				this.compiled = true;
+			}
+		}
+
+		return this.compiledFactory;
+	}
+
+	int getInitializerCount() {
+		return this.members().initializers.length;
+	}
+
+	Method getInitializer(int index) {
+		return this.members().initializers[index];
+	}
+
+	/**
+	 * @return true if any initializer of the class is asynchronous, that is, marked async
+	 *         or returning a CompletionStage.
+	 */
+	boolean hasAsyncInitializers() {
+		return this.members().asyncInitializers;
+	}
+
+	int getResetterCount() {
+		return this.members().resetters.length;
+	}
+
+	Method getResetter(int index) {
+		return this.members().resetters[index];
+	}
+
+	/**
+	 * @return the public no-argument constructor of the class, or null if there is none.
+	 */
+	Constructor<?> getDefaultConstructor() {
+		return this.members().defaultConstructor;
+	}
+
+	/**
+	 * @return the constructor whose parameters are to be resolved as dependencies: the one
+	 *         marked with Dependency, or else the only public constructor if it takes
+	 *         parameters and there is no public no-argument constructor. Null if there is
+	 *         none.
+	 */
+	Constructor<?> getInjectionConstructor() {
+		return this.members().injectionConstructor;
+	}
+
+	int getConstructorDependencyCount() {
+		return this.members().constructorDependencyTypes.length;
+	}
+
+	Class<?> getConstructorDependencyType(int index) {
+		return this.members().constructorDependencyTypes[index];
+	}
+
+	DependencyKind getConstructorDependencyKind(int index) {
+		return this.members().constructorDependencyKinds[index];
+	}
+
+	/**
+	 * How a dependency field is assigned.
+	 */
+	enum DependencyKind {
+		/** An object of the dependency type, constructed or found right away. */
+		DIRECT,
+		/** A Provider of the dependency type. */
+		PROVIDER,
+		/** A proxy implementing the dependency type, which constructs or finds the object on first use. */
+		LAZY_PROXY
+	}
+
+	/**
+	 * The members of the class which take part in injection, found by reflection, or bound
+	 * by name from the PlanCache.
+	 */
+	static final class Members {
+
+		final Field[] dependencyFields;
+
+		final Class<?>[] dependencyTypes;
+
+		final DependencyKind[] dependencyKinds;
+
+		final Method[] initializers;
+
+		final boolean asyncInitializers;
+
+		final Method[] resetters;
+
+		final Constructor<?> defaultConstructor;
+
+		final Constructor<?> injectionConstructor;
+
+		final Class<?>[] constructorDependencyTypes;
+
+		final DependencyKind[] constructorDependencyKinds;
+
+		Members(Field[] dependencyFields, Class<?>[] dependencyTypes, DependencyKind[] dependencyKinds, Method[] initializers,
+				boolean asyncInitializers, Method[] resetters, Constructor<?> defaultConstructor, Constructor<?> injectionConstructor,
+				Class<?>[] constructorDependencyTypes, DependencyKind[] constructorDependencyKinds) {
+			this.dependencyFields = dependencyFields;
+			this.dependencyTypes = dependencyTypes;
+			this.dependencyKinds = dependencyKinds;
+			this.initializers = initializers;
+			this.asyncInitializers = asyncInitializers;
+			this.resetters = resetters;
+			this.defaultConstructor = defaultConstructor;
+			this.injectionConstructor = injectionConstructor;
+			this.constructorDependencyTypes = constructorDependencyTypes;
+			this.constructorDependencyKinds = constructorDependencyKinds;
+		}
+
+		Members(Class<?> type) {
+			List<Field> fields = new ArrayList<Field>();
+
+			for (Field field : getAllFields(new ArrayList<Field>(), type)) {
+				if (Injector.fieldIsDependency(field)) {
+					field.setAccessible(true);
+					fields.add(field);
+				}
+			}
+
+			this.dependencyFields = fields.toArray(new Field[fields.size()]);
+			this.dependencyTypes = new Class<?>[this.dependencyFields.length];
+			this.dependencyKinds = new DependencyKind[this.dependencyFields.length];
+
+			for (int i = 0; i < this.dependencyFields.length; i++) {
+				Field field = this.dependencyFields[i];
+				String description = "dependency field " + field.getName() + " of " + type.getCanonicalName();
+
+				this.dependencyKinds[i] = dependencyKind(field.getType(), field.getAnnotation(Dependency.class), description);
+				this.dependencyTypes[i] = dependencyType(field.getType(), field.getGenericType(), this.dependencyKinds[i], description);
+			}
+
+			this.initializers = annotatedMethods(type, Initializer.class);
+			this.asyncInitializers = hasAsyncMethod(this.initializers);
+			this.resetters = annotatedMethods(type, Reset.class);
+			this.defaultConstructor = findDefaultConstructor(type);
+			this.injectionConstructor = findInjectionConstructor(type, this.defaultConstructor);
+
+			Class<?>[] parameterTypes = this.injectionConstructor != null ? this.injectionConstructor.getParameterTypes() : new Class<?>[0];
+			this.constructorDependencyTypes = new Class<?>[parameterTypes.length];
+			this.constructorDependencyKinds = new DependencyKind[parameterTypes.length];
+
+			for (int i = 0; i < parameterTypes.length; i++) {
+				String description = "constructor parameter " + i + " of " + type.getCanonicalName();
+				Dependency annotation = null;
+
+				for (Annotation parameterAnnotation : this.injectionConstructor.getParameterAnnotations()[i]) {
+					if (parameterAnnotation instanceof Dependency) {
+						annotation = (Dependency)parameterAnnotation;
+					}
+				}
+
+				this.constructorDependencyKinds[i] = dependencyKind(parameterTypes[i], annotation, description);
+				this.constructorDependencyTypes[i] = dependencyType(parameterTypes[i], this.injectionConstructor.getGenericParameterTypes()[i],
+																	this.constructorDependencyKinds[i], description);
+			}
+		}
+
+		private static DependencyKind dependencyKind(Class<?> type, Dependency annotation, String description) {
+			if (type == Provider.class) {
+				return DependencyKind.PROVIDER;
+			} else if (annotation != null && annotation.lazy()) {
+				if (!type.isInterface()) {
+					throw new InjectionException("Lazy " + description + " is not of an interface type");
+				}
+
+				return DependencyKind.LAZY_PROXY;
+			} else {
+				return DependencyKind.DIRECT;
+			}
+		}
+
+		private static Class<?> dependencyType(Class<?> type, Type genericType, DependencyKind kind, String description) {
+			return kind == DependencyKind.PROVIDER ? providedClass(genericType, description) : type;
+		}
+
+		private static Method[] annotatedMethods(Class<?> type, Class<? extends Annotation> annotationClass) {
+			List<Method> methods = new ArrayList<Method>();
+
+			for (Method method : type.getMethods()) {
+				if (method.getAnnotation(annotationClass) != null) {
+					method.setAccessible(true);
+					methods.add(method);
+				}
+			}
+
+			return methods.toArray(new Method[methods.size()]);
+		}
+
+		private static boolean hasAsyncMethod(Method[] initializers) {
+			for (Method method : initializers) {
+				if (method.getAnnotation(Initializer.class).async() || CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Finds the T of a field or parameter declared as Provider&lt;T&gt;.
+		 */
+		private static Class<?> providedClass(Type genericType, String description) {
+			if (genericType instanceof ParameterizedType) {
+				Type providedType = ((ParameterizedType)genericType).getActualTypeArguments()[0];
+
+				if (providedType instanceof ParameterizedType) {
+					providedType = ((ParameterizedType)providedType).getRawType();
+				}
+
+				if (providedType instanceof Class) {
+					return (Class<?>)providedType;
+				}
+			}
+
+			throw new InjectionException("Provider " + description + " does not name the class it provides");
+		}
+
+		private static List<Field> getAllFields(List<Field> fields, Class<?> clazz) {
+		    for (Field field: clazz.getDeclaredFields()) {
+		        fields.add(field);
+		    }
+
+		    if (clazz.getSuperclass() != null) {
+		        fields = getAllFields(fields, clazz.getSuperclass());
+		    }
+
+		    return fields;
+		}
+
+		private static Constructor<?> findDefaultConstructor(Class<?> clazz) {
+			for (Constructor<?> constructor : clazz.getConstructors()) {
+				if (constructor.getParameterTypes().length == 0) {
+					return constructor;
+				}
+			}
+
+			return null;
+		}
+
+		private static Constructor<?> findInjectionConstructor(Class<?> clazz, Constructor<?> defaultConstructor) {
+			Constructor<?> injectionConstructor = null;
+
+			for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+				if (constructor.getAnnotation(Dependency.class) != null) {
+					if (injectionConstructor != null) {
+						throw new InjectionException(clazz.getCanonicalName() + " has more than one constructor marked with Dependency");
+					}
+
+					injectionConstructor = constructor;
+				}
+			}
+
+			if (injectionConstructor == null && defaultConstructor == null) {
+				Constructor<?>[] constructors = clazz.getConstructors();
+
+				if (constructors.length == 1 && constructors[0].getParameterTypes().length > 0) {
+					injectionConstructor = constructors[0];
+				}
+			}
+
+			if (injectionConstructor != null) {
+				injectionConstructor.setAccessible(true);
+			}
+
+			return injectionConstructor;
+		}
+	}
+}
@@ -1,38 +1,63 @@
 package com.safkanyazilim.dependencyinjection;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public abstract class Injector {
 	
 	public static void satisfyDependenciesWithConfigurationOfClassMap(Object object, HashMap<Field, Class<?>> configurationMap){
-		Class<?> clazz = object.getClass();
+		InjectionPlan plan = InjectionPlan.forClass(object.getClass());
 		
-		List<Field> fields = new LinkedList<Field>();
-		fields =  getAllFields(fields, clazz);
-		
-		for (Field field : fields) {
-			if (Injector.fieldIsDependency(field) && configurationMap.containsKey(field)) {
+		for (int i = 0; i < plan.getDependencyCount(); i++) {
+			Field field = plan.getDependencyField(i);
+			
+			if (configurationMap.containsKey(field)) {
 				Class<?> fieldClass = configurationMap.get(field);
-				injectField(field, object, fieldClass);
+				injectField(plan, i, object, fieldClass);
 			}
 		}
 	}
 	
-	private static List<Field> getAllFields(List<Field> fields, Class<?> clazz) {
-	    for (Field field: clazz.getDeclaredFields()) {
-	        fields.add(field);
-	    }
-	    
-	    if (clazz.getSuperclass() != null) {
-	        fields = getAllFields(fields, clazz.getSuperclass());
-	    }
-
-	    return fields;
+	/**
+	 * Compiles a configuration of class map against a class, for satisfying the dependencies
+	 * of many objects of the class with the same configuration. The configuration is 
+	 * validated here, rather than each time it is applied; fields of other classes in it are
+	 * left out.
+	 * 
+	 * @param clazz the class of the objects the configuration will be applied to.
+	 * @param configurationMap the class each configured dependency field is bound to.
+	 * @return the plan, to be passed to satisfyDependenciesWithBindingPlan().
+	 * @throws InjectionException if a field of the class in the configuration is not a 
+	 *         dependency, or is bound to a class which can not be assigned to it.
+	 */
+	public static BindingPlan compileConfigurationOfClassMap(Class<?> clazz, Map<Field, Class<?>> configurationMap) {
+		return new BindingPlan(clazz, configurationMap);
+	}
+	
+	/**
+	 * Satisfies the dependencies the plan binds, like 
+	 * satisfyDependenciesWithConfigurationOfClassMap() with the configuration the plan was
+	 * compiled from.
+	 * 
+	 * @param object an object of the class the plan was compiled against, or a subclass.
+	 * @param plan the plan, from compileConfigurationOfClassMap().
+	 */
+	public static void satisfyDependenciesWithBindingPlan(Object object, BindingPlan plan) {
+		plan.apply(object);
 	}
 	
 	/**
@@ -48,80 +73,445 @@ public abstract class Injector {
 		return object;
 	}
 	
-	public static void satisfyDependencies(Object object) {
-		Class<?> clazz = object.getClass();
+	/**
+	 * Generates (or retrieves) an object for the given class like generateObjectForClass(),
+	 * but calls asynchronous initializers (see Initializer) on the initializer executor 
+	 * rather than waiting for them. Objects are constructed and their dependencies satisfied
+	 * on the calling thread; the initializers of each object with asynchronous initializers,
+	 * or with dependencies which are not ready yet, are called once its dependencies are 
+	 * ready.
+	 * 
+	 * @param clazz the class to be instantiated/retrieved.
+	 * @return a future completing with the object once it, and all its dependencies, are 
+	 *         ready.
+	 */
+	public static <T> CompletableFuture<T> generateObjectForClassAsync(Class<T> clazz) {
+		return AsyncInitialization.generate(clazz);
+	}
+	
+	/**
+	 * @return the executor asynchronous initializers are called on.
+	 */
+	public static Executor getInitializerExecutor() {
+		return AsyncInitialization.getExecutor();
+	}
+	
+	/**
+	 * Selects the executor asynchronous initializers are called on; the common fork-join
+	 * pool by default. An executor starting a virtual thread per task suits initializers
+	 * which block on I/O.
+	 * 
+	 * @param executor the executor to be used.
+	 */
+	public static void setInitializerExecutor(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Initializer executor can not be null");
+		}
 		
-		List<Field> fields = new LinkedList<Field>();
-		fields =  getAllFields(fields, clazz);
+		AsyncInitialization.setExecutor(executor);
+	}
+	
+	/**
+	 * Generates the given number of objects for the given class, like calling 
+	 * generateObjectForClass() as many times, but resolving the class, its constructor and 
+	 * its singleton dependencies only once for the whole batch. For a singleton class, or a
+	 * class mapped to an object, the array is filled with that single object. Objects of 
+	 * Pooled classes are generated anew, not taken from the pool. InjectionListeners are
+	 * notified of each object generated, as they are by generateObjectForClass().
+	 * 
+	 * @param clazz the class to be instantiated.
+	 * @param count the number of objects.
+	 * @return an array of the given class holding the objects.
+	 */
+	public static <T> T[] generateObjectsForClass(Class<T> clazz, int count) {
+		return new ObjectBatch<T>(clazz).generate(count);
+	}
+	
+	/**
+	 * Like generateObjectsForClass(Class, int), but generates the objects in parallel on
+	 * the given pool. The objects are generated in the current scope of the calling thread.
+	 * 
+	 * @param clazz the class to be instantiated.
+	 * @param count the number of objects.
+	 * @param pool the pool to generate the objects on.
+	 * @return an array of the given class holding the objects.
+	 */
+	public static <T> T[] generateObjectsForClass(Class<T> clazz, int count, ForkJoinPool pool) {
+		return new ObjectBatch<T>(clazz).generate(count, pool);
+	}
+	
+	/**
+	 * Returns a stream of the given number of objects generated for the given class, 
+	 * resolving the class as generateObjectsForClass() does. The objects are generated as
+	 * the stream is consumed, in the current scope of the calling thread, also when the
+	 * stream is made parallel.
+	 * 
+	 * @param clazz the class to be instantiated.
+	 * @param count the number of objects.
+	 * @return a stream of the objects.
+	 */
+	public static <T> Stream<T> streamObjectsForClass(Class<T> clazz, int count) {
+		return new ObjectBatch<T>(clazz).stream(count);
+	}
+	
+	/**
+	 * Eagerly constructs all singletons reachable from the given root classes through their
+	 * dependencies, on the common fork-join pool.
+	 * 
+	 * @param rootClasses the classes whose singleton dependencies are to be constructed.
+	 * @return a report of the construction time of each singleton.
+	 * @see #warmUpSingletons(Collection, Executor)
+	 */
+	public static WarmupReport warmUpSingletons(Collection<? extends Class<?>> rootClasses) {
+		return warmUpSingletons(rootClasses, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * This method eagerly constructs (and satisfies the dependencies of) all singletons
+	 * reachable from the given root classes, so that the first requests do not pay for it.
+	 * The singletons are constructed in dependency order, independent ones in parallel on 
+	 * the given executor (which may, for instance, start a virtual thread per task). The 
+	 * method returns when all of them are constructed.
+	 * 
+	 * @param rootClasses the classes whose singleton dependencies are to be constructed;
+	 *        singletons among them are constructed as well.
+	 * @param executor the executor to construct the singletons on.
+	 * @return a report of the construction time of each singleton, and the critical path.
+	 */
+	public static WarmupReport warmUpSingletons(Collection<? extends Class<?>> rootClasses, Executor executor) {
+		return SingletonWarmup.warmUp(rootClasses, executor);
+	}
+	
+	/**
+	 * Classes whose injection constructor arguments are being resolved by the current thread.
+	 */
+	private static final ThreadLocal<Map<Class<?>, Object>> constructorsInProgress = new ThreadLocal<Map<Class<?>, Object>>() {
+		@Override
+		protected Map<Class<?>, Object> initialValue() {
+			return new IdentityHashMap<Class<?>, Object>();
+		}
+	};
+	
+	public static void satisfyDependencies(Object object) {
+		Injector.satisfyDependenciesUntilReady(object);
+	}
+	
+	/**
+	 * Satisfies the dependencies of the object and calls its initializers, like 
+	 * satisfyDependencies().
+	 * 
+	 * @return when the object is being generated by generateObjectForClassAsync(), a future 
+	 *         completing once the object is ready, or null if it is ready already; null 
+	 *         otherwise.
+	 */
+	private static CompletableFuture<?> satisfyDependenciesUntilReady(Object object) {
+		if (Instrumentation.enabled()) {
+			long start = System.nanoTime();
+			Object event = Instrumentation.begin(Instrumentation.DEPENDENCIES_SATISFIED);
+			CompletableFuture<?> ready = Injector.performSatisfyDependencies(object);
+			Instrumentation.dependenciesSatisfied(object.getClass(), start, event);
+			return ready;
+		} else {
+			return Injector.performSatisfyDependencies(object);
+		}
+	}
+	
+	private static CompletableFuture<?> performSatisfyDependencies(Object object) {
+		InjectionPlan plan = InjectionPlan.forClass(object.getClass());
+		InjectorFactory<Object> generatedFactory = plan.getGeneratedFactory();
+		AsyncInitialization.Frame frame = AsyncInitialization.enter();
+		boolean injected = false;
 		
-		for (Field field : fields) {
-			if (Injector.fieldIsDependency(field)) {
-				Class<?> fieldClass = field.getType();
-				Injector.injectField(field, object, fieldClass);
+		try {
+			if (generatedFactory != null) {
+				generatedFactory.injectDependencies(object);
+			} else {
+				for (int i = 0; i < plan.getDependencyCount(); i++) {
+					Injector.injectField(plan, i, object, plan.getDependencyType(i));
+				}
+			}
+			
+			injected = true;
+		} finally {
+			if (!injected) {
+				AsyncInitialization.abandon(frame);
 			}
 		}
-
-		for (Method method : clazz.getMethods()) {
-			if(method.getAnnotation(Initializer.class) != null) {
+		
+		// Generated factories call the initializers themselves.
+		
+		if (frame != null) {
+			return AsyncInitialization.exit(frame, generatedFactory != null ? null : plan, object);
+		}
+		
+		if (generatedFactory == null) {
+			Injector.invokeInitializers(plan, object);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Calls the initializers of the object, waiting for the CompletionStages returned by 
+	 * asynchronous ones.
+	 */
+	static void invokeInitializers(InjectionPlan plan, Object object) {
+		for (int i = 0; i < plan.getInitializerCount(); i++) {
+			Method method = plan.getInitializer(i);
+			Object result = Injector.invokeInitializer(plan, method, object);
+			
+			if (result instanceof CompletionStage) {
 				try {
-					method.setAccessible(true);
-					method.invoke(object);
-				} catch (IllegalAccessException e) {
-					throw new InjectionException("Failed calling method " + method.getName() + " of " + clazz.getCanonicalName(), e);
-				} catch (InvocationTargetException e) {
-					throw new InjectionException("Failed calling method " + method.getName() + " of " + clazz.getCanonicalName(), e);
+					((CompletionStage<?>)result).toCompletableFuture().join();
+				} catch (CompletionException e) {
+					throw new InjectionException("Failed calling method " + method.getName() + " of " + plan.getType().getCanonicalName(), e.getCause());
 				}
 			}
-		}			
+		}
+	}
+	
+	static Object invokeInitializer(InjectionPlan plan, Method method, Object object) {
+		try {
+			if (Instrumentation.enabled()) {
+				long start = System.nanoTime();
+				Object event = Instrumentation.begin(Instrumentation.INITIALIZER_INVOKED);
+				Object result = method.invoke(object);
+				Instrumentation.initializerInvoked(plan.getType(), method.getName(), start, event);
+				return result;
+			} else {
+				return method.invoke(object);
+			}
+		} catch (IllegalAccessException e) {
+			throw Injector.initializerFailed(plan.getType(), method, e);
+		} catch (InvocationTargetException e) {
+			throw Injector.initializerFailed(plan.getType(), method, e);
+		}
 	}
 	
-	private static void injectField(Field field, Object object, Class<?> fieldClass) {
+	static InjectionException initializerFailed(Class<?> clazz, Method method, Throwable cause) {
+		return new InjectionException("Failed calling method " + method.getName() + " of " + clazz.getCanonicalName(), cause);
+	}
+	
+	static void injectField(InjectionPlan plan, int index, Object object, Class<?> fieldClass) {
+		
+		Object fieldValue = Injector.resolveDependency(plan.getDependencyKind(index), fieldClass);
 		
-		Object fieldValue = generateOrFindObjectForClass(fieldClass);
+		Injector.assignField(plan, index, object, fieldValue);
+	}
+	
+	static void assignField(InjectionPlan plan, int index, Object object, Object fieldValue) {
+		Field field = plan.getDependencyField(index);
 		
-		field.setAccessible(true);
+		if (ObjectFactory.getAccessorEngine() == AccessorEngine.METHOD_HANDLE) {
+			MethodHandle setter = plan.getDependencySetter(index);
+			
+			if (setter != null) {
+				try {
+					setter.invokeExact(object, fieldValue);
+					return;
+				} catch (Throwable t) {
+					throw Injector.fieldInjectionFailed(object, field, t);
+				}
+			}
+		}
 		
 		try {
 			field.set(object, fieldValue);
 		}  catch (IllegalAccessException e) {
-			throw new InjectionException("Field injection failed. Trying to inject " 
-										 + object.getClass().getCanonicalName() 
-										 + " field " + field.getName() , e);
+			throw Injector.fieldInjectionFailed(object, field, e);
 		}
 	}
 	
-	private static <T> T generateOrFindObjectForClass(Class<T> clazz) {
+	static InjectionException fieldInjectionFailed(Object object, Field field, Throwable cause) {
+		return new InjectionException("Field injection failed. Trying to inject " 
+									  + object.getClass().getCanonicalName() 
+									  + " field " + field.getName() , cause);
+	}
+	
+	/**
+	 * @return the value of a dependency of the given kind on the given class: the object 
+	 *         for the class, or a provider or lazy proxy of it.
+	 */
+	static Object resolveDependency(InjectionPlan.DependencyKind kind, Class<?> clazz) {
+		switch (kind) {
+		case PROVIDER:
+			return Injector.providerForClass(clazz);
+		case LAZY_PROXY:
+			return Injector.lazyProxyForClass(clazz);
+		default:
+			return generateOrFindObjectForClass(clazz);
+		}
+	}
+	
+	/**
+	 * Resolves the arguments of the injection constructor of a class, for ObjectFactory. A 
+	 * class whose construction needs an object of itself, directly or through other 
+	 * constructors, can not be constructed; this is detected and reported rather than 
+	 * overflowing the stack.
+	 */
+	static Object[] resolveConstructorDependencies(InjectionPlan plan) {
+		Map<Class<?>, Object> inProgress = constructorsInProgress.get();
+		Class<?> clazz = plan.getType();
 		
-		if (Injector.classIsSingleton(clazz)) {
-			// Singleton!		
-			if (ObjectFactory.isClassMappedToObject(clazz)) {
-				// Class is mapped to object, either by us (the expected case) or by
-				// someone else (also legal, just not expected to be typical) so we
-				// will readily use that. -- YS
-				// 
-				// Also note that if mapping is done externally, its dependencies 
-				// should also have been satisfied externally -- we do not satisfy
-				// dependencies for anything we did not generate. -- YS
-				return ObjectFactory.newObject(clazz);
-			} else {
-				// This is a singleton, but not mapped to an object --yet--. So, we
-				// ask ObjectFactory to construct us the object, satisfy its dependencies,
-				// and return the object. -- YS
-				T object = ObjectFactory.newObject(clazz);
-				ObjectFactory.mapClassToObject(clazz, object);
-				Injector.satisfyDependencies(object);
-				return object;
+		if (inProgress.put(clazz, clazz) != null) {
+			throw new InjectionException("Dependency cycle through the constructor of " + clazz.getCanonicalName() 
+										 + "; use a Provider or a lazy dependency to break it");
+		}
+		
+		try {
+			Object[] arguments = new Object[plan.getConstructorDependencyCount()];
+			
+			for (int i = 0; i < arguments.length; i++) {
+				arguments[i] = Injector.resolveDependency(plan.getConstructorDependencyKind(i), plan.getConstructorDependencyType(i));
 			}
-		} else {
-			// This is not a singleton. So, we generate a new object using ObjectFactory. Note 
-			// that regular ObjectFactory rules apply here; even if the class is not marked as
-			// as a singleton, it may indeed act as a singleton if the class is mapped to 
-			// an object externally. -- YS
-			T object = ObjectFactory.newObject(clazz);
-			Injector.satisfyDependencies(object);
 			
-			return object;
+			return arguments;
+		} finally {
+			inProgress.remove(clazz);
+		}
+	}
+	
+	/**
+	 * Returns a provider which will generate (or retrieve, if it is a singleton) an object
+	 * for the given class on its first use, exactly as generateObjectForClass() would.
+	 * 
+	 * @param clazz the class to be instantiated/retrieved.
+	 * @return the provider.
+	 */
+	public static <T> Provider<T> providerForClass(Class<T> clazz) {
+		return new LazyProvider<T>(clazz);
+	}
+	
+	/**
+	 * Returns a proxy implementing the given interface, which will generate (or retrieve,
+	 * if it is a singleton) an object for the interface on the first method call, and
+	 * forward all calls to it.
+	 * 
+	 * @param clazz the interface to be instantiated/retrieved.
+	 * @return the proxy.
+	 */
+	public static <T> T lazyProxyForClass(Class<T> clazz) {
+		return LazyProvider.newProxy(clazz);
+	}
+	
+	private static <T> T generateOrFindObjectForClass(Class<T> clazz) {
+		return GraphResolver.resolve(clazz);
+	}
+	
+	/**
+	 * Returns the number of times a class is generated before it is compiled into a single
+	 * MethodHandle constructing the object, assigning its dependency fields and calling its
+	 * initializers, which the JIT compiler can inline as a whole. Defaults to the value of 
+	 * the system property com.safkanyazilim.dependencyinjection.compileThreshold, or 1000.
+	 * 
+	 * @return the compile threshold; zero or less if compiling is disabled.
+	 */
+	public static int getCompileThreshold() {
+		return FactoryCompiler.getThreshold();
+	}
+	
+	/**
+	 * Sets the compile threshold, see getCompileThreshold(). It applies to classes which are
+	 * not compiled yet.
+	 * 
+	 * @param threshold the compile threshold; zero or less to disable compiling.
+	 */
+	public static void setCompileThreshold(int threshold) {
+		FactoryCompiler.setThreshold(threshold);
+	}
+	
+	/**
+	 * Returns the plan cache file, which keeps what the injector finds by reflection about
+	 * each class (its dependency fields, injection constructor, initializer and reset 
+	 * methods) across JVM restarts, so that a restarted JVM binds them by name instead. 
+	 * Defaults to the file named by the system property 
+	 * com.safkanyazilim.dependencyinjection.planCache, if it is set.
+	 * 
+	 * @return the plan cache file, or null if there is none.
+	 */
+	public static File getPlanCacheFile() {
+		return PlanCache.getFile();
+	}
+	
+	/**
+	 * Selects the plan cache file, see getPlanCacheFile(). It is read if it exists; entries
+	 * which are stale, because the class has changed since, are found by reflection again.
+	 * It applies to classes which have not been injected yet.
+	 * 
+	 * @param file the plan cache file; null to disable the plan cache.
+	 */
+	public static void setPlanCacheFile(File file) {
+		PlanCache.setFile(file);
+	}
+	
+	/**
+	 * Writes the plans found by reflection since the plan cache file was read, along with 
+	 * those of the file which are still valid, to the plan cache file. Call it once the 
+	 * application has warmed up, for instance after warmUpSingletons(). Does nothing if there
+	 * is no plan cache file.
+	 * 
+	 * @throws IOException if writing the file fails.
+	 */
+	public static void savePlanCache() throws IOException {
+		PlanCache.save();
+	}
+	
+	/**
+	 * Returns an object generated for a Pooled class to the pool of the class, after calling
+	 * its methods marked with Reset, so that it can be handed out again by
+	 * generateObjectForClass(). The caller must not use the object afterwards, and should
+	 * release it in the scope it was generated in. Objects of classes which are not Pooled,
+	 * or which are mapped to an object, are ignored.
+	 * 
+	 * @param clazz the class the object was generated for.
+	 * @param object the object to be released.
+	 */
+	public static <T> void releaseObjectForClass(Class<T> clazz, T object) {
+		ObjectPool pool = InjectionPlan.forClass(clazz).getPool();
+		
+		if (pool == null || object == null || ObjectFactory.isClassMappedToObject(clazz)) {
+			return;
+		}
+		
+		InjectionPlan plan = InjectionPlan.forClass(object.getClass());
+		
+		for (int i = 0; i < plan.getResetterCount(); i++) {
+			Method method = plan.getResetter(i);
+			
+			try {
+				method.invoke(object);
+			} catch (IllegalAccessException e) {
+				throw new InjectionException("Failed calling method " + method.getName() + " of " + plan.getType().getCanonicalName(), e);
+			} catch (InvocationTargetException e) {
+				throw new InjectionException("Failed calling method " + method.getName() + " of " + plan.getType().getCanonicalName(), e);
+			}
+		}
+		
+		pool.release(object, Scope.current());
+	}
+	
+	/**
+	 * Registers a listener to receive timings of object generation, dependency satisfaction,
+	 * constructor and initializer invocations, and singleton lookups. See InjectionMetrics
+	 * and JfrInjectionListener.
+	 * 
+	 * @param listener the listener to be added.
+	 */
+	public static void addInjectionListener(InjectionListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Injection listener can not be null");
 		}
+		
+		Instrumentation.addListener(listener);
+	}
+	
+	/**
+	 * Unregisters a listener added with addInjectionListener().
+	 * 
+	 * @param listener the listener to be removed.
+	 */
+	public static void removeInjectionListener(InjectionListener listener) {
+		Instrumentation.removeListener(listener);
 	}
 	
 	public static boolean fieldIsDependency(Field field) {
@@ -129,7 +519,7 @@ public abstract class Injector {
 	}
 	
 	public static boolean classIsSingleton(Class<?> clazz) {
-		return clazz.getAnnotation(Singleton.class) != null;
+		return InjectionPlan.forClass(clazz).isSingleton();
 	}
 
 	
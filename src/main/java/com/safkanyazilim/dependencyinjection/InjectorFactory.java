@@ -0,0 +1,33 @@
+package com.safkanyazilim.dependencyinjection;
+
+/**
+ * <p>
+ * A factory for a single injectable class, generated at compile time by the annotation
+ * processor in the processor module. It constructs objects of the class and satisfies their
+ * dependencies using plain Java code, without any reflection.
+ * </p>
+ *
+ * <p>
+ * The factory for class <code>a.b.C</code> is named <code>a.b.C$$InjectorFactory</code>. If
+ * it is present, Injector and ObjectFactory use it; otherwise they fall back to reflection.
+ * </p>
+ *
+ * @param <T> the type the factory constructs
+ */
+public interface InjectorFactory<T> {
+
+	public static final String CLASS_NAME_SUFFIX = "$$InjectorFactory";
+
+	/**
+	 * @return a new instance of the class, using its public no-argument constructor.
+	 */
+	public T newInstance();
+
+	/**
+	 * Assigns all dependency fields of the given object using Injector, and then calls its
+	 * initializers.
+	 *
+	 * @param object the object whose dependencies are to be satisfied
+	 */
+	public void injectDependencies(T object);
+}
@@ -0,0 +1,149 @@
+package com.safkanyazilim.dependencyinjection;
+
+/**
+ * Dispatches timings to the registered InjectionListeners. The hot paths check enabled()
+ * before reading the clock, so that instrumentation costs a single volatile read while no
+ * listener is registered.
+ * 
+ * <p>
+ * While a JfrInjectionListener is registered, the hot paths also begin a flight recorder
+ * event where an operation starts (see begin()), and pass it along with the start time to
+ * where it ends. The event is committed there once, however many JfrInjectionListeners are
+ * registered, so that its duration is that of the operation; JfrInjectionListeners are not
+ * called for the timed operations themselves.
+ * </p>
+ */
+final class Instrumentation {
+	
+	static final int OBJECT_GENERATED = 0;
+	
+	static final int DEPENDENCIES_SATISFIED = 1;
+	
+	static final int CONSTRUCTOR_INVOKED = 2;
+	
+	static final int INITIALIZER_INVOKED = 3;
+	
+	private static final InjectionListener[] none = new InjectionListener[0];
+	
+	/**
+	 * The registered listeners. The array is never modified, but replaced on registration.
+	 */
+	private static volatile InjectionListener[] listeners = none;
+	
+	/**
+	 * The number of JfrInjectionListeners among the registered listeners. The jdk.jfr classes
+	 * are not touched while it is zero.
+	 */
+	private static volatile int recorders;
+	
+	private Instrumentation() {
+	}
+	
+	static boolean enabled() {
+		return listeners.length != 0;
+	}
+	
+	static synchronized void addListener(InjectionListener listener) {
+		InjectionListener[] newListeners = new InjectionListener[listeners.length + 1];
+		System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+		newListeners[listeners.length] = listener;
+		
+		if (listener instanceof JfrInjectionListener) {
+			recorders++;
+		}
+		
+		listeners = newListeners;
+	}
+	
+	static synchronized void removeListener(InjectionListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				InjectionListener[] newListeners = new InjectionListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, newListeners, 0, i);
+				System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+				listeners = newListeners.length == 0 ? none : newListeners;
+				
+				if (listener instanceof JfrInjectionListener) {
+					recorders--;
+				}
+				
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Begins the flight recorder event of an operation starting now, to be passed to the
+	 * method reporting the end of the operation. Only called when enabled().
+	 * 
+	 * @param type OBJECT_GENERATED, DEPENDENCIES_SATISFIED, CONSTRUCTOR_INVOKED or
+	 *             INITIALIZER_INVOKED.
+	 * @return the event, or null if no JfrInjectionListener is registered or no recording
+	 *         has the event enabled.
+	 */
+	static Object begin(int type) {
+		return recorders != 0 ? JfrInjectionListener.begin(type) : null;
+	}
+	
+	static void objectGenerated(Class<?> clazz, long startNanos, Object event) {
+		long nanos = System.nanoTime() - startNanos;
+		
+		for (InjectionListener listener : listeners) {
+			if (!(listener instanceof JfrInjectionListener)) {
+				listener.objectGenerated(clazz, nanos);
+			}
+		}
+		
+		if (event != null) {
+			JfrInjectionListener.commit(event, clazz, null, nanos);
+		}
+	}
+	
+	static void dependenciesSatisfied(Class<?> clazz, long startNanos, Object event) {
+		long nanos = System.nanoTime() - startNanos;
+		
+		for (InjectionListener listener : listeners) {
+			if (!(listener instanceof JfrInjectionListener)) {
+				listener.dependenciesSatisfied(clazz, nanos);
+			}
+		}
+		
+		if (event != null) {
+			JfrInjectionListener.commit(event, clazz, null, nanos);
+		}
+	}
+	
+	static void constructorInvoked(Class<?> clazz, long startNanos, Object event) {
+		long nanos = System.nanoTime() - startNanos;
+		
+		for (InjectionListener listener : listeners) {
+			if (!(listener instanceof JfrInjectionListener)) {
+				listener.constructorInvoked(clazz, nanos);
+			}
+		}
+		
+		if (event != null) {
+			JfrInjectionListener.commit(event, clazz, null, nanos);
+		}
+	}
+	
+	static void initializerInvoked(Class<?> clazz, String methodName, long startNanos, Object event) {
+		long nanos = System.nanoTime() - startNanos;
+		
+		for (InjectionListener listener : listeners) {
+			if (!(listener instanceof JfrInjectionListener)) {
+				listener.initializerInvoked(clazz, methodName, nanos);
+			}
+		}
+		
+		if (event != null) {
+			JfrInjectionListener.commit(event, clazz, methodName, nanos);
+		}
+	}
+	
+	static void singletonLookup(Class<?> clazz, boolean hit) {
+		for (InjectionListener listener : listeners) {
+			listener.singletonLookup(clazz, hit);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.safkanyazilim.dependencyinjection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * <p>
+ * An InjectionListener emitting Java Flight Recorder events, so that slow constructors
+ * and initializers show up in flight recordings. The events are in the "Dependency
+ * Injection" category and are only committed while a recording has them enabled.
+ * </p>
+ * 
+ * <p>
+ * Requires a JVM with the jdk.jfr module (JDK 11 or later, or 8u262 or later). Once
+ * registered with Injector.addInjectionListener(), the events of generated objects,
+ * satisfied dependencies, constructors and initializers are begun where the operation starts
+ * and committed where it ends, so that their start time and duration are those of the
+ * operation; they are emitted once, however many JfrInjectionListeners are registered. The
+ * duration is also carried in the elapsed field of each event.
+ * </p>
+ * 
+ * <p>
+ * Called directly, the methods of the listener commit events starting when they are called.
+ * </p>
+ */
+public class JfrInjectionListener implements InjectionListener {
+	
+	@Override
+	public void objectGenerated(Class<?> clazz, long nanos) {
+		ObjectGeneratedEvent event = new ObjectGeneratedEvent();
+		
+		if (event.shouldCommit()) {
+			event.objectClass = clazz;
+			event.elapsed = nanos;
+			event.commit();
+		}
+	}
+	
+	@Override
+	public void dependenciesSatisfied(Class<?> clazz, long nanos) {
+		DependenciesSatisfiedEvent event = new DependenciesSatisfiedEvent();
+		
+		if (event.shouldCommit()) {
+			event.objectClass = clazz;
+			event.elapsed = nanos;
+			event.commit();
+		}
+	}
+	
+	@Override
+	public void constructorInvoked(Class<?> clazz, long nanos) {
+		ConstructorInvokedEvent event = new ConstructorInvokedEvent();
+		
+		if (event.shouldCommit()) {
+			event.objectClass = clazz;
+			event.elapsed = nanos;
+			event.commit();
+		}
+	}
+	
+	@Override
+	public void initializerInvoked(Class<?> clazz, String methodName, long nanos) {
+		InitializerInvokedEvent event = new InitializerInvokedEvent();
+		
+		if (event.shouldCommit()) {
+			event.objectClass = clazz;
+			event.methodName = methodName;
+			event.elapsed = nanos;
+			event.commit();
+		}
+	}
+	
+	@Override
+	public void singletonLookup(Class<?> clazz, boolean hit) {
+		if (!hit) {
+			SingletonMissEvent event = new SingletonMissEvent();
+			
+			if (event.shouldCommit()) {
+				event.objectClass = clazz;
+				event.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Begins an event for Instrumentation.begin().
+	 * 
+	 * @return the event, or null if no recording has it enabled.
+	 */
+	static Object begin(int type) {
+		Event event;
+		
+		switch (type) {
+		case Instrumentation.OBJECT_GENERATED:
+			event = new ObjectGeneratedEvent();
+			break;
+		case Instrumentation.DEPENDENCIES_SATISFIED:
+			event = new DependenciesSatisfiedEvent();
+			break;
+		case Instrumentation.CONSTRUCTOR_INVOKED:
+			event = new ConstructorInvokedEvent();
+			break;
+		default:
+			event = new InitializerInvokedEvent();
+			break;
+		}
+		
+		if (!event.isEnabled()) {
+			return null;
+		}
+		
+		event.begin();
+		return event;
+	}
+	
+	/**
+	 * Ends and commits an event returned by begin(), unless it is below the threshold of the
+	 * recordings.
+	 * 
+	 * @param methodName the name of the initializer, for an InitializerInvokedEvent.
+	 */
+	static void commit(Object begun, Class<?> clazz, String methodName, long nanos) {
+		Event event = (Event)begun;
+		event.end();
+		
+		if (!event.shouldCommit()) {
+			return;
+		}
+		
+		if (event instanceof ObjectGeneratedEvent) {
+			((ObjectGeneratedEvent)event).objectClass = clazz;
+			((ObjectGeneratedEvent)event).elapsed = nanos;
+		} else if (event instanceof DependenciesSatisfiedEvent) {
+			((DependenciesSatisfiedEvent)event).objectClass = clazz;
+			((DependenciesSatisfiedEvent)event).elapsed = nanos;
+		} else if (event instanceof ConstructorInvokedEvent) {
+			((ConstructorInvokedEvent)event).objectClass = clazz;
+			((ConstructorInvokedEvent)event).elapsed = nanos;
+		} else {
+			((InitializerInvokedEvent)event).objectClass = clazz;
+			((InitializerInvokedEvent)event).methodName = methodName;
+			((InitializerInvokedEvent)event).elapsed = nanos;
+		}
+		
+		event.commit();
+	}
+	
+	@Name("com.safkanyazilim.dependencyinjection.ObjectGenerated")
+	@Label("Object Generated")
+	@Description("An object was generated or retrieved by the Injector, with its dependencies")
+	@Category("Dependency Injection")
+	@StackTrace(false)
+	static class ObjectGeneratedEvent extends Event {
+		@Label("Class")
+		Class<?> objectClass;
+		
+		@Label("Elapsed")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+	}
+	
+	@Name("com.safkanyazilim.dependencyinjection.DependenciesSatisfied")
+	@Label("Dependencies Satisfied")
+	@Description("The dependencies of an object were satisfied and its initializers called")
+	@Category("Dependency Injection")
+	@StackTrace(false)
+	static class DependenciesSatisfiedEvent extends Event {
+		@Label("Class")
+		Class<?> objectClass;
+		
+		@Label("Elapsed")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+	}
+	
+	@Name("com.safkanyazilim.dependencyinjection.ConstructorInvoked")
+	@Label("Constructor Invoked")
+	@Description("A constructor was invoked by the ObjectFactory")
+	@Category("Dependency Injection")
+	@StackTrace(false)
+	static class ConstructorInvokedEvent extends Event {
+		@Label("Class")
+		Class<?> objectClass;
+		
+		@Label("Elapsed")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+	}
+	
+	@Name("com.safkanyazilim.dependencyinjection.InitializerInvoked")
+	@Label("Initializer Invoked")
+	@Description("An @Initializer method was called by the Injector")
+	@Category("Dependency Injection")
+	@StackTrace(false)
+	static class InitializerInvokedEvent extends Event {
+		@Label("Class")
+		Class<?> objectClass;
+		
+		@Label("Method")
+		String methodName;
+		
+		@Label("Elapsed")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+	}
+	
+	@Name("com.safkanyazilim.dependencyinjection.SingletonMiss")
+	@Label("Singleton Miss")
+	@Description("A singleton was requested before it existed, and is being constructed")
+	@Category("Dependency Injection")
+	@StackTrace(false)
+	static class SingletonMissEvent extends Event {
+		@Label("Class")
+		Class<?> objectClass;
+	}
+}
@@ -0,0 +1,80 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A lock-free histogram of durations in nanoseconds, with one bucket per power of two.
+ * Percentiles are therefore accurate to within a factor of two, which is enough to tell
+ * a slow constructor from a fast one.
+ * </p>
+ */
+public final class LatencyHistogram {
+	
+	private static final int BUCKETS = 64;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	
+	private final LongAdder count = new LongAdder();
+	
+	private final LongAdder totalNanos = new LongAdder();
+	
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		
+		// Bucket i holds durations below 2^i, and at least 2^(i-1).
+		this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+		this.count.increment();
+		this.totalNanos.add(nanos);
+	}
+	
+	public long getCount() {
+		return this.count.sum();
+	}
+	
+	public long getTotalNanos() {
+		return this.totalNanos.sum();
+	}
+	
+	public long getMeanNanos() {
+		long count = this.getCount();
+		
+		return count == 0 ? 0 : this.getTotalNanos() / count;
+	}
+	
+	/**
+	 * Returns an upper bound of the given percentile of the recorded durations.
+	 * 
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the upper bound of the bucket the percentile falls into, in nanoseconds
+	 */
+	public long getPercentileNanos(double percentile) {
+		long total = 0;
+		
+		for (int i = 0; i < BUCKETS; i++) {
+			total += this.buckets.get(i);
+		}
+		
+		long rank = (long)Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.buckets.get(i);
+			
+			if (seen >= rank && seen > 0) {
+				return i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+		}
+		
+		return 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "count=" + this.getCount() + " mean=" + this.getMeanNanos() + "ns p50<=" + this.getPercentileNanos(50)
+			   + "ns p99<=" + this.getPercentileNanos(99) + "ns";
+	}
+}
@@ -0,0 +1,70 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * A Provider generating the object for its class with the Injector on the first call to
+ * get(), and caching it. It also serves as the invocation handler of lazy proxies. The
+ * object is generated in the scope which was current when the provider was created.
+ * 
+ * @param <T> the type of the dependency
+ */
+final class LazyProvider<T> implements Provider<T>, InvocationHandler {
+	
+	private final Class<T> clazz;
+	
+	private final Scope scope;
+	
+	private volatile T object;
+	
+	LazyProvider(Class<T> clazz) {
+		this.clazz = clazz;
+		this.scope = Scope.current();
+	}
+	
+	@Override
+	public T get() {
+		T object = this.object;
+		
+		if (object == null) {
+			synchronized (this) {
+				object = this.object;
+				
+				if (object == null) {
+					object = this.scope.generateObjectForClass(this.clazz);
+					this.object = object;
+				}
+			}
+		}
+		
+		return object;
+	}
+	
+	/**
+	 * Creates a proxy implementing the given interface, which forwards all calls to the
+	 * object provided by a new LazyProvider.
+	 * 
+	 * @param <T> the type of the dependency
+	 * @param clazz the interface
+	 * @return the proxy
+	 */
+	static <T> T newProxy(Class<T> clazz) {
+		if (!clazz.isInterface()) {
+			throw new InjectionException("Lazy dependencies can only be injected for interfaces, " + clazz.getCanonicalName() + " is not an interface");
+		}
+		
+		return clazz.cast(Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz }, new LazyProvider<T>(clazz)));
+	}
+	
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(this.get(), args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
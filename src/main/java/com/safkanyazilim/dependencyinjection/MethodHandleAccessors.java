@@ -0,0 +1,87 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates and caches the MethodHandles used by the METHOD_HANDLE accessor engine. Constructor
+ * handles take a single Object[] holding the arguments and return an Object; setter handles
+ * take the target object and the value as Objects.
+ */
+final class MethodHandleAccessors {
+	
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+	
+	private static final MethodType setterType = MethodType.methodType(void.class, Object.class, Object.class);
+	
+	/**
+	 * The constructor handles of each class, kept with the class so that they do not keep it
+	 * from being unloaded.
+	 */
+	private static final ClassValue<ConcurrentMap<Constructor<?>, MethodHandle>> constructorHandles = new ClassValue<ConcurrentMap<Constructor<?>, MethodHandle>>() {
+		@Override
+		protected ConcurrentMap<Constructor<?>, MethodHandle> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<Constructor<?>, MethodHandle>();
+		}
+	};
+	
+	private MethodHandleAccessors() {
+	}
+	
+	/**
+	 * Returns the (cached) spreading handle for the given constructor.
+	 * 
+	 * @param constructor the constructor
+	 * @return a handle of type (Object[])Object invoking the constructor
+	 * @throws IllegalAccessException if the constructor is not accessible
+	 */
+	static MethodHandle constructorHandle(Constructor<?> constructor) throws IllegalAccessException {
+		ConcurrentMap<Constructor<?>, MethodHandle> handles = constructorHandles.get(constructor.getDeclaringClass());
+		MethodHandle handle = handles.get(constructor);
+		
+		if (handle == null) {
+			int arity = constructor.getParameterTypes().length;
+			
+			handle = lookup.unreflectConstructor(constructor)
+					.asType(MethodType.genericMethodType(arity))
+					.asSpreader(Object[].class, arity);
+			
+			MethodHandle existing = handles.putIfAbsent(constructor, handle);
+			
+			if (existing != null) {
+				handle = existing;
+			}
+		}
+		
+		return handle;
+	}
+	
+	/**
+	 * Creates a setter handle for the given field. The field should have been made 
+	 * accessible already.
+	 * 
+	 * @param field the field
+	 * @return a handle of type (Object,Object)void assigning the field, or null if the 
+	 *         field can not be assigned through a handle (for instance, it is final). The 
+	 *         object is ignored for a static field.
+	 */
+	static MethodHandle setterHandle(Field field) {
+		try {
+			MethodHandle setter = lookup.unreflectSetter(field);
+			
+			if (Modifier.isStatic(field.getModifiers())) {
+				setter = MethodHandles.dropArguments(setter, 0, Object.class);
+			}
+			
+			return setter.asType(setterType);
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+}
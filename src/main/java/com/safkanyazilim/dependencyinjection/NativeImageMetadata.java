@@ -0,0 +1,386 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Reachability metadata for GraalVM native-image: the classes, fields, constructors and
+ * methods the Injector looks up and uses reflectively, and the interfaces it creates lazy
+ * proxies of. Starting from the classes added to it, it walks the classes they depend on
+ * (through dependency fields and injection constructors) and the classes they are mapped to
+ * in the current scope, and writes reflect-config.json and proxy-config.json.
+ * </p>
+ *
+ * <p>
+ * Run it at build time, with the application on the class path, and put its output in
+ * META-INF/native-image of the application:
+ * </p>
+ *
+ * <pre>
+ *     java com.safkanyazilim.dependencyinjection.NativeImageMetadata [--initialize-at-build-time]
+ *          &lt;output directory&gt; [&lt;class&gt;...]
+ * </pre>
+ *
+ * <p>
+ * It registers the bindings of the InjectionIndex, and walks its singleton classes, the
+ * bindings and the given classes. With --initialize-at-build-time, it also writes a
+ * native-image.properties initializing the walked classes and this package at image build
+ * time, so that singletons warmed up and frozen in a static initializer end up in the
+ * image heap rather than being constructed at startup.
+ * </p>
+ */
+public final class NativeImageMetadata {
+
+	public static final String REFLECT_CONFIG = "reflect-config.json";
+
+	public static final String PROXY_CONFIG = "proxy-config.json";
+
+	public static final String PROPERTIES = "native-image.properties";
+
+	private static final String INITIALIZE_AT_BUILD_TIME = "--initialize-at-build-time";
+
+	private final Map<Class<?>, Entry> entries = new LinkedHashMap<Class<?>, Entry>();
+
+	private final Set<Class<?>> proxyInterfaces = new LinkedHashSet<Class<?>>();
+
+	private final Set<Class<?>> walkedClasses = new LinkedHashSet<Class<?>>();
+
+	/**
+	 * Classes whose objects the Injector constructs; those are initialized at build time.
+	 */
+	private final Set<Class<?>> constructedClasses = new LinkedHashSet<Class<?>>();
+
+	/**
+	 * Walks the singleton classes and the bindings of the index. The bindings should be
+	 * registered already, so that classes are walked along with the classes they are mapped
+	 * to.
+	 *
+	 * @param index the index
+	 * @return the metadata of the classes of the index
+	 */
+	public static NativeImageMetadata forIndex(InjectionIndex index) {
+		NativeImageMetadata metadata = new NativeImageMetadata();
+
+		for (Class<?> clazz : index.getSingletonClasses()) {
+			metadata.addClass(clazz);
+		}
+
+		for (Map.Entry<Class<?>, Class<?>> binding : index.getBindings().entrySet()) {
+			metadata.addClass(binding.getKey());
+			metadata.addClass(binding.getValue());
+		}
+
+		return metadata;
+	}
+
+	/**
+	 * Adds the class, and the classes it depends on or is mapped to in the current scope,
+	 * unless they have been added already.
+	 *
+	 * @param clazz the class, as it would be passed to Injector.generateObjectForClass().
+	 */
+	public void addClass(Class<?> clazz) {
+		if (clazz.isPrimitive() || clazz.isArray() || !this.walkedClasses.add(clazz)) {
+			return;
+		}
+
+		Entry entry = this.entry(clazz);
+
+		Class<?> mappedClass = Scope.current().findClass(clazz);
+
+		if (mappedClass != null) {
+			this.addClass(mappedClass);
+		}
+
+		if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+			return;
+		}
+
+		InjectionPlan plan = InjectionPlan.forClass(clazz);
+
+		this.constructedClasses.add(clazz);
+
+		// The plan finds its members through all declared fields of the class and its
+		// superclasses, and through the public methods and constructors of the class.
+		entry.queryAllPublicMethods = true;
+		entry.queryAllPublicConstructors = true;
+
+		for (Class<?> type = clazz; type != null && type != Object.class; type = type.getSuperclass()) {
+			this.entry(type).allDeclaredFields = true;
+		}
+
+		if (plan.getGeneratedFactory() != null) {
+			Class<?> factoryClass = plan.getGeneratedFactory().getClass();
+
+			this.entry(factoryClass).methods.add(NativeImageMetadata.defaultConstructor(factoryClass));
+		}
+
+		Constructor<?> constructor = plan.getInjectionConstructor();
+
+		if (constructor == null) {
+			constructor = plan.getDefaultConstructor();
+		}
+
+		if (constructor != null) {
+			entry.methods.add(constructor);
+		}
+
+		for (int i = 0; i < plan.getDependencyCount(); i++) {
+			Field field = plan.getDependencyField(i);
+
+			this.entry(field.getDeclaringClass()).fields.add(field);
+		}
+
+		for (int i = 0; i < plan.getInitializerCount(); i++) {
+			this.addMethod(plan.getInitializer(i));
+		}
+
+		for (int i = 0; i < plan.getResetterCount(); i++) {
+			this.addMethod(plan.getResetter(i));
+		}
+
+		for (int i = 0; i < plan.getDependencyCount(); i++) {
+			this.addDependency(plan.getDependencyKind(i), plan.getDependencyType(i));
+		}
+
+		if (plan.getInjectionConstructor() != null) {
+			for (int i = 0; i < plan.getConstructorDependencyCount(); i++) {
+				this.addDependency(plan.getConstructorDependencyKind(i), plan.getConstructorDependencyType(i));
+			}
+		}
+	}
+
+	private void addDependency(InjectionPlan.DependencyKind kind, Class<?> type) {
+		if (kind == InjectionPlan.DependencyKind.LAZY_PROXY) {
+			this.proxyInterfaces.add(type);
+		}
+
+		this.addClass(type);
+	}
+
+	private void addMethod(Method method) {
+		this.entry(method.getDeclaringClass()).methods.add(method);
+	}
+
+	private Entry entry(Class<?> clazz) {
+		Entry entry = this.entries.get(clazz);
+
+		if (entry == null) {
+			entry = new Entry(clazz);
+			this.entries.put(clazz, entry);
+		}
+
+		return entry;
+	}
+
+	private static Constructor<?> defaultConstructor(Class<?> clazz) {
+		try {
+			return clazz.getConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new InjectionException(clazz.getName() + " has no public no-argument constructor", e);
+		}
+	}
+
+	/**
+	 * @return the contents of reflect-config.json.
+	 */
+	public String getReflectConfig() {
+		StringBuilder json = new StringBuilder("[\n");
+		String separator = "";
+
+		for (Entry entry : this.entries.values()) {
+			json.append(separator);
+			entry.appendTo(json);
+			separator = ",\n";
+		}
+
+		return json.append("\n]\n").toString();
+	}
+
+	/**
+	 * @return the contents of proxy-config.json.
+	 */
+	public String getProxyConfig() {
+		StringBuilder json = new StringBuilder("[\n");
+		String separator = "";
+
+		for (Class<?> proxyInterface : this.proxyInterfaces) {
+			json.append(separator).append("  { \"interfaces\" : [ ").append(quote(proxyInterface.getName())).append(" ] }");
+			separator = ",\n";
+		}
+
+		return json.append("\n]\n").toString();
+	}
+
+	/**
+	 * @return the contents of native-image.properties, initializing this package and the
+	 *         classes the Injector constructs at image build time.
+	 */
+	public String getBuildTimeInitializationProperties() {
+		StringBuilder properties = new StringBuilder("Args = ").append(INITIALIZE_AT_BUILD_TIME).append('=');
+
+		properties.append(NativeImageMetadata.class.getPackage().getName());
+
+		for (Class<?> clazz : this.constructedClasses) {
+			properties.append(',').append(clazz.getName());
+		}
+
+		return properties.append('\n').toString();
+	}
+
+	/**
+	 * Writes reflect-config.json and proxy-config.json (and native-image.properties, if
+	 * asked to) to the directory, creating it if necessary.
+	 *
+	 * @param directory the directory, typically META-INF/native-image/&lt;group&gt;/&lt;artifact&gt;
+	 * @param initializeAtBuildTime whether to write native-image.properties
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(File directory, boolean initializeAtBuildTime) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed creating " + directory);
+		}
+
+		write(new File(directory, REFLECT_CONFIG), this.getReflectConfig());
+		write(new File(directory, PROXY_CONFIG), this.getProxyConfig());
+
+		if (initializeAtBuildTime) {
+			write(new File(directory, PROPERTIES), this.getBuildTimeInitializationProperties());
+		}
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String quote(String name) {
+		return "\"" + name + "\"";
+	}
+
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+		boolean initializeAtBuildTime = arguments.remove(INITIALIZE_AT_BUILD_TIME);
+
+		if (arguments.isEmpty()) {
+			System.err.println("Usage: NativeImageMetadata [" + INITIALIZE_AT_BUILD_TIME + "] <output directory> [<class>...]");
+			System.exit(1);
+		}
+
+		InjectionIndex index = InjectionIndex.load();
+		index.registerBindings();
+
+		NativeImageMetadata metadata = NativeImageMetadata.forIndex(index);
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+		for (String className : arguments.subList(1, arguments.size())) {
+			metadata.addClass(Class.forName(className, false, classLoader));
+		}
+
+		metadata.writeTo(new File(arguments.get(0)), initializeAtBuildTime);
+	}
+
+	/**
+	 * The reflect-config.json entry of a class.
+	 */
+	private static final class Entry {
+
+		private final Class<?> type;
+
+		private boolean allDeclaredFields;
+
+		private boolean queryAllPublicMethods;
+
+		private boolean queryAllPublicConstructors;
+
+		private final Set<Field> fields = new LinkedHashSet<Field>();
+
+		/**
+		 * Methods and constructors.
+		 */
+		private final Set<Object> methods = new LinkedHashSet<Object>();
+
+		Entry(Class<?> type) {
+			this.type = type;
+		}
+
+		void appendTo(StringBuilder json) {
+			json.append("  {\n    \"name\" : ").append(quote(this.type.getName()));
+
+			if (this.allDeclaredFields) {
+				json.append(",\n    \"allDeclaredFields\" : true");
+			}
+
+			if (this.queryAllPublicMethods) {
+				json.append(",\n    \"queryAllPublicMethods\" : true");
+			}
+
+			if (this.queryAllPublicConstructors) {
+				json.append(",\n    \"queryAllPublicConstructors\" : true");
+			}
+
+			if (!this.fields.isEmpty()) {
+				json.append(",\n    \"fields\" : [");
+				String separator = "\n";
+
+				for (Field field : this.fields) {
+					json.append(separator).append("      { \"name\" : ").append(quote(field.getName())).append(", \"allowWrite\" : true }");
+					separator = ",\n";
+				}
+
+				json.append("\n    ]");
+			}
+
+			if (!this.methods.isEmpty()) {
+				json.append(",\n    \"methods\" : [");
+				String separator = "\n";
+
+				for (Object method : this.methods) {
+					String name;
+					Class<?>[] parameterTypes;
+
+					if (method instanceof Constructor) {
+						name = "<init>";
+						parameterTypes = ((Constructor<?>)method).getParameterTypes();
+					} else {
+						name = ((Method)method).getName();
+						parameterTypes = ((Method)method).getParameterTypes();
+					}
+
+					json.append(separator).append("      { \"name\" : ").append(quote(name)).append(", \"parameterTypes\" : [");
+
+					for (int i = 0; i < parameterTypes.length; i++) {
+						json.append(i == 0 ? " " : ", ").append(quote(parameterTypes[i].getTypeName()));
+					}
+
+					json.append(parameterTypes.length == 0 ? "] }" : " ] }");
+					separator = ",\n";
+				}
+
+				json.append("\n    ]");
+			}
+
+			json.append("\n  }");
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Generates many objects of the same class. The class is resolved in the current scope,
+ * and its constructor and singleton dependencies are resolved, once for the whole batch;
+ * only non-singleton dependencies are generated for each object.
+ * </p>
+ *
+ * <p>
+ * A class with a factory generated at compile time is constructed and injected by the
+ * factory for each object, as it does not look anything up reflectively to begin with.
+ * </p>
+ *
+ * <p>
+ * Registered InjectionListeners are notified of the construction, the dependencies and the
+ * generation of each object, as for objects generated one by one. A singleton class, or a
+ * class mapped to an object, is generated once for the whole batch, and reported once.
+ * </p>
+ */
+final class ObjectBatch<T> {
+
+	/**
+	 * Marks a dependency which is not shared by the batch, and is resolved for each object.
+	 */
+	private static final Object UNSHARED = new Object();
+
+	/**
+	 * The number of objects below which a parallel batch is not split further, at the
+	 * least.
+	 */
+	private static final int MINIMUM_SPLIT_SIZE = 64;
+
+	private final Class<T> clazz;
+
+	private final Scope scope;
+
+	/**
+	 * The object every element of the batch is, for a singleton class or a class mapped to
+	 * an object; null otherwise.
+	 */
+	private final T sharedObject;
+
+	private final InjectionPlan plan;
+
+	private final InjectorFactory<Object> generatedFactory;
+
+	private final Constructor<?> constructor;
+
+	private final Object[] constructorArguments;
+
+	private final boolean constructorArgumentsShared;
+
+	private final Object[] fieldValues;
+
+	ObjectBatch(Class<T> clazz) {
+		this.clazz = clazz;
+		this.scope = Scope.current();
+
+		if (Injector.classIsSingleton(clazz) || ObjectFactory.isClassMappedToObject(clazz)) {
+			this.sharedObject = Injector.generateObjectForClass(clazz);
+			this.plan = null;
+			this.generatedFactory = null;
+			this.constructor = null;
+			this.constructorArguments = null;
+			this.constructorArgumentsShared = true;
+			this.fieldValues = null;
+			return;
+		}
+
+		this.sharedObject = null;
+		this.plan = InjectionPlan.forClass(ObjectFactory.resolveClass(clazz));
+		this.generatedFactory = this.plan.getGeneratedFactory();
+
+		if (this.generatedFactory != null) {
+			this.constructor = null;
+			this.constructorArguments = null;
+			this.constructorArgumentsShared = true;
+			this.fieldValues = null;
+			return;
+		}
+
+		if (this.plan.getInjectionConstructor() != null) {
+			this.constructor = this.plan.getInjectionConstructor();
+			this.constructorArguments = new Object[this.plan.getConstructorDependencyCount()];
+
+			for (int i = 0; i < this.constructorArguments.length; i++) {
+				this.constructorArguments[i] = sharedDependency(this.plan.getConstructorDependencyKind(i), this.plan.getConstructorDependencyType(i));
+			}
+		} else if (this.plan.getDefaultConstructor() != null) {
+			this.constructor = this.plan.getDefaultConstructor();
+			this.constructorArguments = new Object[0];
+		} else {
+			throw new Error("ObjectFactory.newObject() failed to create " + clazz.getCanonicalName() + " with given arguments. No matching constructor found.");
+		}
+
+		this.constructorArgumentsShared = !Arrays.asList(this.constructorArguments).contains(UNSHARED);
+		this.fieldValues = new Object[this.plan.getDependencyCount()];
+
+		for (int i = 0; i < this.fieldValues.length; i++) {
+			this.fieldValues[i] = sharedDependency(this.plan.getDependencyKind(i), this.plan.getDependencyType(i));
+		}
+	}
+
+	/**
+	 * @return the object shared by all objects of the batch for the given dependency (a
+	 *         singleton, or an object the class is mapped to), or UNSHARED.
+	 */
+	private static Object sharedDependency(InjectionPlan.DependencyKind kind, Class<?> dependencyType) {
+		if (kind == InjectionPlan.DependencyKind.DIRECT
+				&& (Injector.classIsSingleton(dependencyType) || ObjectFactory.isClassMappedToObject(dependencyType))) {
+			return Injector.generateObjectForClass(dependencyType);
+		}
+
+		return UNSHARED;
+	}
+
+	T[] generate(int count) {
+		T[] objects = this.newArray(count);
+
+		this.fill(objects, 0, count);
+
+		return objects;
+	}
+
+	T[] generate(int count, ForkJoinPool pool) {
+		T[] objects = this.newArray(count);
+		int splitSize = Math.max(MINIMUM_SPLIT_SIZE, count / (pool.getParallelism() * 8));
+
+		pool.invoke(new FillAction(objects, 0, count, splitSize));
+
+		return objects;
+	}
+
+	Stream<T> stream(int count) {
+		return IntStream.range(0, count).mapToObj(new IntFunction<T>() {
+			@Override
+			public T apply(int index) {
+				return ObjectBatch.this.newObjectInScope();
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private T[] newArray(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Object count can not be negative");
+		}
+
+		return (T[])Array.newInstance(this.clazz, count);
+	}
+
+	private void fill(T[] objects, int from, int to) {
+		if (this.sharedObject != null) {
+			Arrays.fill(objects, from, to, this.sharedObject);
+			return;
+		}
+
+		Scope previous = this.scope.enter();
+
+		try {
+			for (int i = from; i < to; i++) {
+				objects[i] = this.newObject();
+			}
+		} finally {
+			Scope.exit(previous);
+		}
+	}
+
+	private T newObjectInScope() {
+		if (this.sharedObject != null) {
+			return this.sharedObject;
+		}
+
+		if (Scope.current() == this.scope) {
+			return this.newObject();
+		}
+
+		Scope previous = this.scope.enter();
+
+		try {
+			return this.newObject();
+		} finally {
+			Scope.exit(previous);
+		}
+	}
+
+	/**
+	 * Constructs an object and satisfies its dependencies, reporting it to the registered
+	 * InjectionListeners as GraphResolver does. Must be called in the scope of the batch.
+	 */
+	private T newObject() {
+		long start = Instrumentation.enabled() ? System.nanoTime() : 0;
+		Object event = start != 0 ? Instrumentation.begin(Instrumentation.OBJECT_GENERATED) : null;
+		Object object;
+
+		if (this.generatedFactory != null) {
+			object = ObjectFactory.invokeGeneratedFactory(this.generatedFactory);
+		} else {
+			object = ObjectFactory.invokeConstructor(this.constructor, this.resolveConstructorArguments());
+		}
+
+		long satisfyStart = start != 0 ? System.nanoTime() : 0;
+		Object satisfyEvent = satisfyStart != 0 ? Instrumentation.begin(Instrumentation.DEPENDENCIES_SATISFIED) : null;
+
+		this.satisfyDependencies(object);
+
+		if (start != 0) {
+			Instrumentation.dependenciesSatisfied(object.getClass(), satisfyStart, satisfyEvent);
+			Instrumentation.objectGenerated(this.clazz, start, event);
+		}
+
+		return this.clazz.cast(object);
+	}
+
+	/**
+	 * Assigns the dependency fields of a newly constructed object and calls its initializers.
+	 */
+	private void satisfyDependencies(Object object) {
+		if (this.generatedFactory != null) {
+			this.generatedFactory.injectDependencies(object);
+			return;
+		}
+
+		for (int i = 0; i < this.fieldValues.length; i++) {
+			Object fieldValue = this.fieldValues[i];
+
+			if (fieldValue == UNSHARED) {
+				fieldValue = Injector.resolveDependency(this.plan.getDependencyKind(i), this.plan.getDependencyType(i));
+			}
+
+			Injector.assignField(this.plan, i, object, fieldValue);
+		}
+
+		Injector.invokeInitializers(this.plan, object);
+	}
+
+	/**
+	 * @return the constructor arguments for an object, resolving the unshared ones.
+	 */
+	private Object[] resolveConstructorArguments() {
+		if (this.constructorArgumentsShared) {
+			return this.constructorArguments;
+		}
+
+		Object[] resolved = this.constructorArguments.clone();
+
+		for (int i = 0; i < resolved.length; i++) {
+			if (resolved[i] == UNSHARED) {
+				resolved[i] = Injector.resolveDependency(this.plan.getConstructorDependencyKind(i), this.plan.getConstructorDependencyType(i));
+			}
+		}
+
+		return resolved;
+	}
+
+	/**
+	 * Fills a range of the array, splitting it in halves until it is small enough.
+	 */
+	private final class FillAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final T[] objects;
+
+		private final int from;
+
+		private final int to;
+
+		private final int splitSize;
+
+		FillAction(T[] objects, int from, int to, int splitSize) {
+			this.objects = objects;
+			this.from = from;
+			this.to = to;
+			this.splitSize = splitSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= this.splitSize) {
+				ObjectBatch.this.fill(this.objects, this.from, this.to);
+				return;
+			}
+
+			int middle = (this.from + this.to) >>> 1;
+
+			invokeAll(new FillAction(this.objects, this.from, middle, this.splitSize),
+					  new FillAction(this.objects, middle, this.to, this.splitSize));
+		}
+	}
+}
@@ -2,20 +2,28 @@ package com.safkanyazilim.dependencyinjection;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
- * This class is a general purpose "Object Factory". 
+ * This class is a general purpose "Object Factory". Its mappings are kept in the current
+ * Scope of the calling thread (the root scope, unless a child scope has been opened), and
+ * lookups fall through to the parent scopes. All of its methods may be called concurrently;
+ * lookups of mappings do not take any locks.
  * @author Y. Safkan <safkan@safkanyazilim.com>
  * 
  */
 
 @Singleton
 public class ObjectFactory {
-    private static Map<Class<?>, Class<?>> classToClassMap = new HashMap<Class<?>, Class<?>>();
+    /**
+     * Constructors already resolved by newObject() for an actual (that is, already mapped)
+     * class and the classes of the arguments. As the key is the class to be instantiated, 
+     * changing the mappings can not make entries stale, in any scope. Entries are kept with
+     * their classes, so that they do not keep the classes from being unloaded.
+     */
+    private static final WeakClassMap<ResolvedConstructors> constructorCache = new WeakClassMap<ResolvedConstructors>();
     
-    private static Map<Class<?>, Object> classToObjectMap = new HashMap<Class<?>, Object>();
+    private static volatile AccessorEngine accessorEngine = AccessorEngine.fromSystemProperty();
     
     /**
      * Determine whether the given argument list args can be used to invoke the
@@ -102,20 +110,100 @@ public class ObjectFactory {
      * that if we fail object instantiation we should better fail and fail fast.
      * </p>
      * 
+     * <p>
+     * The constructor is invoked reflectively or through a cached MethodHandle, depending
+     * on the current accessor engine.
+     * </p>
+     * 
      * @param <T> The type of the object being constructed.
      * @param constructor The constructor
      * @param args Arguments to be passed to the constructor.
      * @return the new object
      */
     
-    private static <T> T invokeConstructor(Constructor<T> constructor, Object[] args) {
+    static <T> T invokeConstructor(Constructor<T> constructor, Object[] args) {
+        long start = Instrumentation.enabled() ? System.nanoTime() : 0;
+        Object event = start != 0 ? Instrumentation.begin(Instrumentation.CONSTRUCTOR_INVOKED) : null;
+        
         try {
-            return performInvokeConstructor(constructor, args);
-        } catch (Exception e) {
+            T object;
+            
+            if (ObjectFactory.accessorEngine == AccessorEngine.METHOD_HANDLE) {
+                object = performInvokeConstructorHandle(constructor, args);
+            } else {
+                object = performInvokeConstructor(constructor, args);
+            }
+            
+            if (start != 0) {
+                Instrumentation.constructorInvoked(constructor.getDeclaringClass(), start, event);
+            }
+            
+            return object;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new Error("ObjectFactory.invokeConstructor got exception", e);
         } 
     }
     
+    /**
+     * Fails in the same way as invokeConstructor, with the current accessor engine, for a
+     * constructor invoked otherwise (see FactoryCompiler).
+     * 
+     * @param thrown what the constructor threw
+     * @return the error to be thrown
+     */
+    
+    static Error constructorFailed(Throwable thrown) {
+        if (ObjectFactory.accessorEngine == AccessorEngine.METHOD_HANDLE) {
+            return thrown instanceof Error ? (Error)thrown : new Error("ObjectFactory.invokeConstructor got exception", thrown);
+        }
+        
+        return new Error("ObjectFactory.invokeConstructor got exception", new InvocationTargetException(thrown));
+    }
+    
+    /**
+     * Constructs a new object using a factory generated at compile time, failing fast
+     * in the same way as invokeConstructor.
+     * 
+     * @param generatedFactory the generated factory
+     * @return the new object
+     */
+    
+    static Object invokeGeneratedFactory(InjectorFactory<Object> generatedFactory) {
+        long start = Instrumentation.enabled() ? System.nanoTime() : 0;
+        Object event = start != 0 ? Instrumentation.begin(Instrumentation.CONSTRUCTOR_INVOKED) : null;
+        
+        try {
+            Object object = generatedFactory.newInstance();
+            
+            if (start != 0) {
+                Instrumentation.constructorInvoked(object.getClass(), start, event);
+            }
+            
+            return object;
+        } catch (RuntimeException e) {
+            throw new Error("ObjectFactory.invokeGeneratedFactory got exception", e);
+        }
+    }
+    
+    /**
+     * Perform the actual call to the Constructor of type T through its cached MethodHandle.
+     * Unlike performInvokeConstructor, there is no limit on the number of arguments.
+     * 
+     * @param <T> the type of the constructor
+     * @param constructor the constructor to be invoked
+     * @param args arguments to the constructor
+     * @return the constructed object
+     * @throws Throwable anything thrown by the target constructor
+     */
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T performInvokeConstructorHandle(Constructor<T> constructor, Object[] args) throws Throwable
+    {
+        return (T)MethodHandleAccessors.constructorHandle(constructor).invokeExact(args);
+    }
+    
     /**
      * Perform the actual call to the Constructor of type T with the given arguments.
      * 
@@ -130,7 +218,8 @@ public class ObjectFactory {
      * for up to nine arguments using a switch statement. 
      * 
      * If it receives more than nine arguments, it throws an error, because it is just 
-     * like when object construction fails due to low memory.
+     * like when object construction fails due to low memory. The METHOD_HANDLE accessor
+     * engine does not have this limitation.
      * 
      * @param <T> the type of the constructor
      * @param constructor the constructor to be invoked
@@ -203,7 +292,7 @@ public class ObjectFactory {
     
     @SuppressWarnings("unchecked")
     public static <T> T newObject(Class<? extends T> clazz, Object... arguments) {
-        Object mappedObject = ObjectFactory.classToObjectMap.get(clazz);
+        Object mappedObject = Scope.current().findObject(clazz);
         
         // Warning: Early return. If we have the class mapped to an object directly,
         // we return that object without doing anything else.
@@ -212,17 +301,67 @@ public class ObjectFactory {
             return (T)mappedObject;
         }
         
-        Class<? extends T> actualClass = (Class<? extends T>)ObjectFactory.classToClassMap.get(clazz);
+        return constructObject(clazz, arguments);
+    }
+    
+    /**
+     * Constructs an object like newObject(), without looking for an object the class is
+     * mapped to. The Injector has looked for it already, and for a singleton only in the
+     * scopes up to the one owning it (see Scope.findSingleton()).
+     */
+    
+    @SuppressWarnings("unchecked")
+    static <T> T constructObject(Class<? extends T> clazz, Object... arguments) {
+        Class<? extends T> actualClass = (Class<? extends T>)Scope.current().findClass(clazz);
         
         if (actualClass == null) {
             actualClass = clazz;
         }
         
+        // Also return early if we have already resolved a constructor for the same
+        // class and argument classes.
+        
+        if (arguments.length > 0) {
+            Constructor<? extends T> cachedConstructor = (Constructor<? extends T>)findCachedConstructor(actualClass, arguments);
+            
+            if (cachedConstructor != null) {
+                return invokeConstructor(cachedConstructor, arguments);
+            }
+        }
+
+        // The no-argument case is by far the most common one (it is what the Injector
+        // uses), so we use the factory generated at compile time if there is one, or the
+        // constructors resolved in the cached injection plan instead of scanning the constructors.
+        // A class with an injection constructor is constructed with it, its arguments being
+        // resolved by the Injector.
+
+        if (arguments.length == 0) {
+            InjectionPlan plan = InjectionPlan.forClass(actualClass);
+            InjectorFactory<Object> generatedFactory = plan.getGeneratedFactory();
+            
+            if (generatedFactory != null) {
+                return (T)invokeGeneratedFactory(generatedFactory);
+            }
+            
+            Constructor<? extends T> injectionConstructor = (Constructor<? extends T>)plan.getInjectionConstructor();
+            
+            if (injectionConstructor != null) {
+                return invokeConstructor(injectionConstructor, Injector.resolveConstructorDependencies(plan));
+            }
+            
+            Constructor<? extends T> constructor = (Constructor<? extends T>)plan.getDefaultConstructor();
+
+            if (constructor != null) {
+                return invokeConstructor(constructor, arguments);
+            }
+        }
+
         Constructor<? extends T>[] constructors = (Constructor<? extends T>[])actualClass.getConstructors();
     	
         for (Constructor<? extends T> constructor : constructors) {
         	
         	if (isCompatible(constructor, arguments)) {
+                cacheConstructor(actualClass, arguments, constructor);
                 return invokeConstructor(constructor, arguments);
             }
         }
@@ -230,6 +369,61 @@ public class ObjectFactory {
         throw new Error("ObjectFactory.newObject() failed to create " + clazz.getCanonicalName() + " with given arguments. No matching constructor found.");
     }
    
+    /**
+     * Returns the constructor resolved earlier for the given class and the classes of the
+     * given arguments.
+     * 
+     * @param actualClass the class to be instantiated
+     * @param arguments the arguments to the constructor
+     * @return the cached constructor, or null if there is none
+     */
+    
+    private static Constructor<?> findCachedConstructor(Class<?> actualClass, Object[] arguments) {
+        ResolvedConstructors resolved = ObjectFactory.constructorCache.get(actualClass);
+        
+        if (resolved == null) {
+            return null;
+        }
+        
+        return resolved.find(arguments);
+    }
+    
+    /**
+     * Remembers the constructor resolved for the given class and the classes of the given
+     * arguments. Calls with null arguments are not cached, as their classes are not known.
+     * 
+     * @param actualClass the class to be instantiated
+     * @param arguments the arguments to the constructor
+     * @param constructor the resolved constructor
+     */
+    
+    private static void cacheConstructor(Class<?> actualClass, Object[] arguments, Constructor<?> constructor) {
+        if (arguments.length == 0) {
+            return;
+        }
+        
+        Class<?>[] argumentClasses = new Class<?>[arguments.length];
+        
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] == null) {
+                return;
+            }
+            
+            argumentClasses[i] = arguments[i].getClass();
+        }
+        
+        ResolvedConstructors resolved = ObjectFactory.constructorCache.get(actualClass);
+        
+        if (resolved == null) {
+            resolved = new ResolvedConstructors();
+        }
+        
+        // Entries are immutable; losing an entry to a concurrent update only means
+        // it will be resolved again.
+        
+        ObjectFactory.constructorCache.put(actualClass, resolved.with(argumentClasses, constructor));
+    }
+    
     /**
      * This method causes clazz1 to be mapped to clazz2 so that when an instance of clazz1
      * is requested using the newObject() method, an instance of clazz2 will actually be
@@ -239,13 +433,16 @@ public class ObjectFactory {
      * Note that the mapping done here is not recursive. If you map a to b, and then map
      * b to c, a request for a will not generate c, it will just generate b.
      * 
+     * The mapping is made in the current scope, and is visible to its child scopes. It 
+     * fails with an IllegalStateException if the current scope is frozen.
+     * 
      * @param <T> The type of clazz1
      * @param clazz1 the class mapped from
      * @param clazz2 the class mapped to
      */
 
     public static <T> void mapClassToClass(Class<T> clazz1, Class<? extends T> clazz2) {
-        ObjectFactory.classToClassMap.put(clazz1, clazz2);
+        Scope.current().mapClassToClass(clazz1, clazz2);
     }
     
     /**
@@ -266,6 +463,11 @@ public class ObjectFactory {
      * different tests. One can either modify the mapping to achieve this effect, or hold
      * on to the reference and make the modifications directly on the mapped object.
      * </p>
+     * 
+     * <p>
+     * The mapping is made in the current scope, and is visible to its child scopes. It 
+     * fails with an IllegalStateException if the current scope is frozen.
+     * </p>
      *  
      * @param <T> The type of the object to be mapped
      * @param clazz the class to be mapped from
@@ -273,36 +475,180 @@ public class ObjectFactory {
      */
     
     public static <T> void mapClassToObject(Class<T> clazz, T object) {
-        ObjectFactory.classToObjectMap.put(clazz, object);
+        Scope.current().mapClassToObject(clazz, object);
     }
     
     /**
      * <p>
-     * Returns whether the given class is already mapped to an object.
+     * Returns whether the given class is already mapped to an object, in the current
+     * scope or one of its ancestors.
      * </p>
      * @param clazz the class to be checked for mapping.
      * @return true if the class is mapped to an object, false otherwise.
      */
     
     public static boolean isClassMappedToObject(Class<?> clazz) {
-    	return ObjectFactory.classToObjectMap.containsKey(clazz);
+    	return Scope.current().findObject(clazz) != null;
+    }
+    
+    /**
+     * Returns the accessor engine used for invoking constructors and assigning dependency fields.
+     * 
+     * @return the current accessor engine
+     */
+    
+    public static AccessorEngine getAccessorEngine() {
+        return ObjectFactory.accessorEngine;
+    }
+    
+    /**
+     * Selects the accessor engine used for invoking constructors and assigning dependency
+     * fields. This overrides the engine given by the system property.
+     * 
+     * @param engine the accessor engine to be used
+     */
+    
+    public static void setAccessorEngine(AccessorEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Accessor engine can not be null");
+        }
+        
+        ObjectFactory.accessorEngine = engine;
+    }
+    
+    /**
+     * @return true if the given class is mapped to an object or to another class in the 
+     *         current scope.
+     */
+    static boolean isClassMapped(Class<?> clazz) {
+        Scope scope = Scope.current();
+        
+        return scope.findObject(clazz) != null || scope.findClass(clazz) != null;
+    }
+    
+    /**
+     * <p>
+     * Returns the class an instance of which newObject() would construct for the given class,
+     * that is, the class it is mapped to, or the class itself if it is not mapped.
+     * </p>
+     * @param clazz the class to be resolved.
+     * @return the class that would actually be instantiated.
+     */
+    
+    static Class<?> resolveClass(Class<?> clazz) {
+        Class<?> actualClass = Scope.current().findClass(clazz);
+        
+        return actualClass != null ? actualClass : clazz;
+    }
+    
+    /**
+     * Freezes the current scope: mapping or clearing afterwards fails with an
+     * IllegalStateException. Freezing the root scope only seals it; a child scope also
+     * compiles its class mappings into an immutable table. Call it once the mappings are
+     * complete, for instance at the end of bootstrap. See Scope.freeze().
+     */
+    
+    public static void freeze() {
+        Scope.current().freeze();
+    }
+    
+    /**
+     * @return true if the current scope is frozen.
+     */
+    
+    public static boolean isFrozen() {
+        return Scope.current().isFrozen();
+    }
+    
+    /**
+     * Estimates the heap size retained by each object the current scope maps a class to,
+     * including its singletons. See Scope.estimateRetainedSizes().
+     * 
+     * @return the estimated retained sizes, by the class mapped to the object.
+     */
+    
+    public static RetainedSizeReport estimateRetainedSizes() {
+        return Scope.current().estimateRetainedSizes();
     }
     
     /**
-     * This method clears the class to class map. 
+     * This method clears the class to class map of the current scope, and the constructors
+     * resolved by newObject(). It fails with an IllegalStateException if the current scope
+     * is frozen.
      */
     
     public static void clearClassMap() {
-        ObjectFactory.classToClassMap.clear();
+        Scope.current().clearClassMap();
+        ObjectFactory.constructorCache.clear();
     }
     
     /**
-     * This method clears the class to object map.
+     * This method clears the class to object map of the current scope, and the constructors
+     * resolved by newObject(). It fails with an IllegalStateException if the current scope
+     * is frozen.
      */
     
     public static void clearObjectMap() {
-        ObjectFactory.classToObjectMap.clear();
+        Scope.current().clearObjectMap();
+        ObjectFactory.constructorCache.clear();
     }
     
+    /**
+     * The constructors resolved for one class, one per distinct list of argument classes.
+     * Instances are immutable; with() returns a copy with one more entry.
+     */
     
+    private static final class ResolvedConstructors {
+        private final Class<?>[][] argumentClasses;
+        
+        private final Constructor<?>[] constructors;
+        
+        ResolvedConstructors() {
+            this(new Class<?>[0][], new Constructor<?>[0]);
+        }
+        
+        private ResolvedConstructors(Class<?>[][] argumentClasses, Constructor<?>[] constructors) {
+            this.argumentClasses = argumentClasses;
+            this.constructors = constructors;
+        }
+        
+        Constructor<?> find(Object[] arguments) {
+            for (int i = 0; i < this.constructors.length; i++) {
+                if (matches(this.argumentClasses[i], arguments)) {
+                    return this.constructors[i];
+                }
+            }
+            
+            return null;
+        }
+        
+        ResolvedConstructors with(Class<?>[] argumentClasses, Constructor<?> constructor) {
+            int size = this.constructors.length;
+            
+            Class<?>[][] newArgumentClasses = new Class<?>[size + 1][];
+            Constructor<?>[] newConstructors = new Constructor<?>[size + 1];
+            
+            System.arraycopy(this.argumentClasses, 0, newArgumentClasses, 0, size);
+            System.arraycopy(this.constructors, 0, newConstructors, 0, size);
+            
+            newArgumentClasses[size] = argumentClasses;
+            newConstructors[size] = constructor;
+            
+            return new ResolvedConstructors(newArgumentClasses, newConstructors);
+        }
+        
+        private static boolean matches(Class<?>[] argumentClasses, Object[] arguments) {
+            if (argumentClasses.length != arguments.length) {
+                return false;
+            }
+            
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] == null || arguments[i].getClass() != argumentClasses[i]) {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
+    }
 }
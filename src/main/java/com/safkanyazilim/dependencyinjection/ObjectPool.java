@@ -0,0 +1,111 @@
+package com.safkanyazilim.dependencyinjection;
+
+/**
+ * <p>
+ * The pool of a Pooled class. Each thread has its own stack of released objects, so
+ * acquiring and releasing objects never contends with other threads. Each object is kept
+ * with the scope it was released in, and is only handed out again in that scope; objects
+ * of scopes which have been closed are dropped.
+ * </p>
+ */
+final class ObjectPool {
+
+	private final int maxSize;
+
+	private final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+		@Override
+		protected Stack initialValue() {
+			return new Stack(ObjectPool.this.maxSize);
+		}
+	};
+
+	ObjectPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return an object released by the current thread in the given scope, or null if
+	 *         there is none.
+	 */
+	Object acquire(Scope scope) {
+		return this.stacks.get().pop(scope);
+	}
+
+	/**
+	 * @return true if the object was kept, false if the pool of the current thread is full.
+	 */
+	boolean release(Object object, Scope scope) {
+		return this.stacks.get().push(object, scope);
+	}
+
+	private static final class Stack {
+		private final Object[] objects;
+
+		private final Scope[] scopes;
+
+		private int size;
+
+		Stack(int maxSize) {
+			this.objects = new Object[maxSize];
+			this.scopes = new Scope[maxSize];
+		}
+
+		Object pop(Scope scope) {
+			while (this.size > 0) {
+				int top = this.size - 1;
+				Scope topScope = this.scopes[top];
+
+				if (topScope != scope && !topScope.isClosed()) {
+					return null;
+				}
+
+				Object object = this.objects[top];
+
+				this.objects[top] = null;
+				this.scopes[top] = null;
+				this.size = top;
+
+				if (topScope == scope) {
+					return object;
+				}
+			}
+
+			return null;
+		}
+
+		boolean push(Object object, Scope scope) {
+			if (this.size == this.objects.length) {
+				this.dropClosedScopes();
+
+				if (this.size == this.objects.length) {
+					return false;
+				}
+			}
+
+			this.objects[this.size] = object;
+			this.scopes[this.size] = scope;
+			this.size++;
+
+			return true;
+		}
+
+		private void dropClosedScopes() {
+			int kept = 0;
+
+			for (int i = 0; i < this.size; i++) {
+				if (!this.scopes[i].isClosed()) {
+					this.objects[kept] = this.objects[i];
+					this.scopes[kept] = this.scopes[i];
+					kept++;
+				}
+			}
+
+			for (int i = kept; i < this.size; i++) {
+				this.objects[i] = null;
+				this.scopes[i] = null;
+			}
+
+			this.size = kept;
+		}
+	}
+}
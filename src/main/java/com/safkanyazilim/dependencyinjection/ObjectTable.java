@@ -0,0 +1,368 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The class to object mappings of a scope, each object kept in a slot according to the
+ * Retained policy it was put with. Lookups do not lock; changes are made under the lock of
+ * the scope.
+ * </p>
+ *
+ * <p>
+ * The table of the root scope keeps its slots in a ClassValue, that is, with the classes
+ * themselves, so that a class (and its class loader) can still be unloaded while it is
+ * mapped; the classes are only referred to weakly otherwise. The tables of child scopes,
+ * which are expected to be short lived, keep them in a map.
+ * </p>
+ */
+final class ObjectTable {
+
+	private final boolean weakClasses;
+
+	/**
+	 * The slots of a root table, replaced by a new ClassValue when the table is cleared.
+	 */
+	private volatile ClassValue<Slot> slotValues;
+
+	/**
+	 * The classes which have been mapped in a root table, to go through its slots.
+	 */
+	private final ConcurrentMap<ClassReference, Boolean> mappedClasses;
+
+	private final ReferenceQueue<Class<?>> unloadedClasses;
+
+	/**
+	 * The slots of the table of a child scope.
+	 */
+	private final ConcurrentMap<Class<?>, Slot> slotMap;
+
+	/**
+	 * The number of slots holding an IDLE object, so that tables without any are not swept.
+	 * Like the other changes, it is only updated under the lock of the scope.
+	 */
+	private int idleObjects;
+
+	/**
+	 * The shortest idle time of the IDLE objects put in the table, in nanoseconds.
+	 */
+	private long shortestIdleNanos = Long.MAX_VALUE;
+
+	/**
+	 * When evictIdleIfDue() sweeps the table next.
+	 */
+	private long nextSweep;
+
+	ObjectTable(boolean weakClasses) {
+		this.weakClasses = weakClasses;
+
+		if (weakClasses) {
+			this.slotValues = ObjectTable.newSlotValues();
+			this.mappedClasses = new ConcurrentHashMap<ClassReference, Boolean>();
+			this.unloadedClasses = new ReferenceQueue<Class<?>>();
+			this.slotMap = null;
+		} else {
+			this.mappedClasses = null;
+			this.unloadedClasses = null;
+			this.slotMap = new ConcurrentHashMap<Class<?>, Slot>();
+		}
+	}
+
+	private static ClassValue<Slot> newSlotValues() {
+		return new ClassValue<Slot>() {
+			@Override
+			protected Slot computeValue(Class<?> type) {
+				return new Slot();
+			}
+		};
+	}
+
+	/**
+	 * @return the object the class is mapped to, or null if it is not mapped, or its object
+	 *         has been let go.
+	 */
+	Object get(Class<?> clazz) {
+		Slot slot = this.weakClasses ? this.slotValues.get(clazz) : this.slotMap.get(clazz);
+
+		return slot != null ? slot.get() : null;
+	}
+
+	/**
+	 * Maps the class to the object, kept according to the policy; null for STRONG.
+	 */
+	void put(Class<?> clazz, Object object, Retained retained) {
+		Slot slot;
+
+		if (this.weakClasses) {
+			this.expungeUnloadedClasses();
+			this.mappedClasses.put(new ClassReference(clazz, this.unloadedClasses), Boolean.TRUE);
+			slot = this.slotValues.get(clazz);
+
+			if (slot.holdsIdleObject()) {
+				this.idleObjects--;
+			}
+
+			slot.set(object, retained);
+		} else {
+			slot = new Slot();
+			slot.set(object, retained);
+			this.released(this.slotMap.put(clazz, slot));
+		}
+
+		if (slot.holdsIdleObject()) {
+			long sweep = System.nanoTime() + slot.idleNanos / 2;
+
+			// An object idle sooner than those already in the table brings the sweep forward.
+			if (this.idleObjects++ == 0 || sweep - this.nextSweep < 0) {
+				this.nextSweep = sweep;
+			}
+
+			this.shortestIdleNanos = Math.min(this.shortestIdleNanos, slot.idleNanos);
+		}
+	}
+
+	/**
+	 * Unmaps the class, if it is mapped to the given object.
+	 */
+	void remove(Class<?> clazz, Object object) {
+		if (this.weakClasses) {
+			Slot slot = this.slotValues.get(clazz);
+
+			if (slot.peek() == object) {
+				this.released(slot);
+				slot.clear();
+			}
+		} else {
+			Slot slot = this.slotMap.get(clazz);
+
+			if (slot != null && slot.peek() == object && this.slotMap.remove(clazz, slot)) {
+				this.released(slot);
+			}
+		}
+	}
+
+	void clear() {
+		if (this.weakClasses) {
+			this.slotValues = ObjectTable.newSlotValues();
+			this.mappedClasses.clear();
+		} else {
+			this.slotMap.clear();
+		}
+
+		this.idleObjects = 0;
+		this.shortestIdleNanos = Long.MAX_VALUE;
+	}
+
+	private void released(Slot slot) {
+		if (slot != null && slot.holdsIdleObject()) {
+			this.idleObjects--;
+		}
+	}
+
+	/**
+	 * Lets go of the IDLE objects which have not been looked up for their idle time.
+	 */
+	void evictIdle() {
+		if (this.idleObjects == 0) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		int idleObjects = 0;
+
+		// The IDLE objects are counted again, since the slots of unloaded classes are no
+		// longer swept.
+
+		if (this.weakClasses) {
+			this.expungeUnloadedClasses();
+
+			ClassValue<Slot> slotValues = this.slotValues;
+
+			for (ClassReference reference : this.mappedClasses.keySet()) {
+				Class<?> clazz = reference.get();
+
+				if (clazz != null && slotValues.get(clazz).keepIfLookedUp(now)) {
+					idleObjects++;
+				}
+			}
+		} else {
+			for (Slot slot : this.slotMap.values()) {
+				if (slot.keepIfLookedUp(now)) {
+					idleObjects++;
+				}
+			}
+		}
+
+		this.idleObjects = idleObjects;
+		this.nextSweep = now + this.shortestIdleNanos / 2;
+	}
+
+	/**
+	 * Does what evictIdle() does, unless the table holds no IDLE objects, or has been swept
+	 * less than half the shortest idle time of its objects ago; objects are then let go at
+	 * most half their idle time late. Cheap enough to be called whenever an object is put.
+	 */
+	void evictIdleIfDue() {
+		if (this.idleObjects != 0 && System.nanoTime() - this.nextSweep >= 0) {
+			this.evictIdle();
+		}
+	}
+
+	/**
+	 * @return the classes mapped in the table, with the objects they are mapped to, leaving
+	 *         out those which have been let go.
+	 */
+	Map<Class<?>, Object> objects() {
+		Map<Class<?>, Object> objects = new LinkedHashMap<Class<?>, Object>();
+
+		for (Map.Entry<Class<?>, Slot> entry : this.slots().entrySet()) {
+			Object object = entry.getValue().peek();
+
+			if (object != null) {
+				objects.put(entry.getKey(), object);
+			}
+		}
+
+		return objects;
+	}
+
+	private Map<Class<?>, Slot> slots() {
+		if (!this.weakClasses) {
+			return this.slotMap;
+		}
+
+		this.expungeUnloadedClasses();
+
+		Map<Class<?>, Slot> slots = new LinkedHashMap<Class<?>, Slot>();
+		ClassValue<Slot> slotValues = this.slotValues;
+
+		for (ClassReference reference : this.mappedClasses.keySet()) {
+			Class<?> clazz = reference.get();
+
+			if (clazz != null) {
+				slots.put(clazz, slotValues.get(clazz));
+			}
+		}
+
+		return slots;
+	}
+
+	private void expungeUnloadedClasses() {
+		Reference<? extends Class<?>> reference;
+
+		while ((reference = this.unloadedClasses.poll()) != null) {
+			this.mappedClasses.remove(reference);
+		}
+	}
+
+	/**
+	 * The object a class is mapped to: referred to directly for the STRONG and IDLE
+	 * policies, through a soft or weak reference for the others.
+	 */
+	private static final class Slot {
+
+		private volatile Object object;
+
+		private volatile Reference<Object> reference;
+
+		/**
+		 * The idle time of an IDLE object in nanoseconds; zero otherwise.
+		 */
+		private volatile long idleNanos;
+
+		/**
+		 * When an IDLE object was last looked up. Updates may be lost to races, which only
+		 * makes the object look idle a little earlier.
+		 */
+		private long lastLookup;
+
+		Object get() {
+			Object object = this.object;
+
+			if (object != null) {
+				if (this.idleNanos != 0) {
+					this.lastLookup = System.nanoTime();
+				}
+
+				return object;
+			}
+
+			return this.peek();
+		}
+
+		/**
+		 * @return the object, without counting it as looked up.
+		 */
+		Object peek() {
+			Object object = this.object;
+
+			if (object != null) {
+				return object;
+			}
+
+			Reference<Object> reference = this.reference;
+
+			return reference != null ? reference.get() : null;
+		}
+
+		void set(Object object, Retained retained) {
+			Retained.Policy policy = retained != null ? retained.value() : Retained.Policy.STRONG;
+
+			this.idleNanos = policy == Retained.Policy.IDLE ? Math.max(1, TimeUnit.MILLISECONDS.toNanos(retained.idleMillis())) : 0;
+			this.lastLookup = System.nanoTime();
+
+			// The new object is set before the old one is cleared, so that lookups racing
+			// with a remapping find either of them.
+
+			switch (policy) {
+			case SOFT:
+				this.reference = new SoftReference<Object>(object);
+				this.object = null;
+				break;
+			case WEAK:
+				this.reference = new WeakReference<Object>(object);
+				this.object = null;
+				break;
+			default:
+				this.object = object;
+				this.reference = null;
+			}
+		}
+
+		void clear() {
+			this.object = null;
+			this.reference = null;
+			this.idleNanos = 0;
+		}
+
+		boolean holdsIdleObject() {
+			return this.idleNanos != 0 && this.object != null;
+		}
+
+		/**
+		 * Lets go of an IDLE object which has not been looked up for its idle time.
+		 *
+		 * @return true if the slot still holds an IDLE object.
+		 */
+		boolean keepIfLookedUp(long now) {
+			if (!this.holdsIdleObject()) {
+				return false;
+			}
+
+			if (now - this.lastLookup > this.idleNanos) {
+				this.object = null;
+				return false;
+			}
+
+			return true;
+		}
+	}
+}
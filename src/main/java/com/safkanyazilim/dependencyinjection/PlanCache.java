@@ -0,0 +1,517 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * An optional file keeping the members of injection plans across JVM restarts: the names
+ * of the dependency fields with their target types, the parameter types of the injection
+ * constructor, and the names of the initializer and reset methods. A class found in it is
+ * bound by name, rather than by walking its hierarchy and scanning its members for
+ * annotations.
+ * </p>
+ *
+ * <p>
+ * Each entry is keyed by the name of the class, and carries a SHA-1 hash of the class files
+ * of the class, its superclasses and their interfaces, as found through their class
+ * loaders. An entry whose hash no longer matches, or whose members can no longer be bound,
+ * is stale: the plan is found by reflection, and the entry replaced. Classes whose class
+ * files can not be found (such as those defined at runtime) are not cached.
+ * </p>
+ *
+ * <p>
+ * The file is named by the system property named by FILE_PROPERTY, or by
+ * Injector.setPlanCacheFile(), and is read through a memory mapping, an entry at a time as
+ * plans are asked for. New and rebuilt entries are only written by save(), along with the
+ * entries of the file which have not been replaced.
+ * </p>
+ */
+final class PlanCache {
+
+	static final String FILE_PROPERTY = "com.safkanyazilim.dependencyinjection.planCache";
+
+	/**
+	 * "SYPC".
+	 */
+	private static final int MAGIC = 0x53595043;
+
+	/**
+	 * Version 2 keeps dependency kinds by name rather than by ordinal.
+	 */
+	private static final int VERSION = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Map<String, Class<?>> primitiveClasses = new HashMap<String, Class<?>>();
+
+	static {
+		for (Class<?> primitiveClass : Arrays.<Class<?>>asList(boolean.class, byte.class, char.class, short.class, int.class,
+															   long.class, float.class, double.class, void.class)) {
+			primitiveClasses.put(primitiveClass.getName(), primitiveClass);
+		}
+	}
+
+	private static volatile PlanCache cache = PlanCache.open(System.getProperty(FILE_PROPERTY));
+
+	private final File file;
+
+	/**
+	 * The contents of the file when it was opened; null if there was none, or it was not a
+	 * valid cache file.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The entries of the file, by class name.
+	 */
+	private final Map<String, Location> locations;
+
+	/**
+	 * The entries found by reflection since the file was opened, to be saved.
+	 */
+	private final ConcurrentMap<String, byte[]> newEntries = new ConcurrentHashMap<String, byte[]>();
+
+	private PlanCache(File file, ByteBuffer buffer, Map<String, Location> locations) {
+		this.file = file;
+		this.buffer = buffer;
+		this.locations = locations;
+	}
+
+	private static PlanCache open(String fileName) {
+		return fileName != null && fileName.length() > 0 ? PlanCache.open(new File(fileName)) : null;
+	}
+
+	/**
+	 * Opens the cache file, which is empty if it does not exist, is not readable or is not a
+	 * valid cache file; it is then written anew by save().
+	 */
+	static PlanCache open(File file) {
+		if (!file.isFile()) {
+			return new PlanCache(file, null, Collections.<String, Location>emptyMap());
+		}
+
+		try {
+			MappedByteBuffer buffer;
+			RandomAccessFile input = new RandomAccessFile(file, "r");
+
+			try {
+				// The mapping stays valid once the channel is closed.
+				buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+			} finally {
+				input.close();
+			}
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return new PlanCache(file, null, Collections.<String, Location>emptyMap());
+			}
+
+			int count = buffer.getInt();
+			Map<String, Location> locations = new HashMap<String, Location>(count * 2);
+
+			for (int i = 0; i < count; i++) {
+				int start = buffer.position();
+				String className = PlanCache.readString(buffer);
+				int length = buffer.getInt();
+				int body = buffer.position();
+
+				buffer.position(body + length);
+				locations.put(className, new Location(start, body, body + length));
+			}
+
+			return new PlanCache(file, buffer, locations);
+		} catch (IOException e) {
+			return new PlanCache(file, null, Collections.<String, Location>emptyMap());
+		} catch (RuntimeException e) {
+			// A truncated or otherwise corrupt file.
+			return new PlanCache(file, null, Collections.<String, Location>emptyMap());
+		}
+	}
+
+	static File getFile() {
+		PlanCache cache = PlanCache.cache;
+
+		return cache != null ? cache.file : null;
+	}
+
+	/**
+	 * Opens the given cache file, or disables the cache if it is null. Plans found already
+	 * are not affected.
+	 */
+	static void setFile(File file) {
+		PlanCache.cache = file != null ? PlanCache.open(file) : null;
+	}
+
+	/**
+	 * Writes the entries of the cache file which have not been replaced, and the entries
+	 * found by reflection since it was opened, to the cache file.
+	 */
+	static void save() throws IOException {
+		PlanCache cache = PlanCache.cache;
+
+		if (cache != null) {
+			cache.write();
+		}
+	}
+
+	/**
+	 * @return the members of the class: bound from the cache file if it has a valid entry
+	 *         for it, found by reflection otherwise.
+	 */
+	static InjectionPlan.Members members(Class<?> type) {
+		PlanCache cache = PlanCache.cache;
+
+		if (cache == null) {
+			return new InjectionPlan.Members(type);
+		}
+
+		byte[] hash = PlanCache.hash(type);
+
+		if (hash == null) {
+			return new InjectionPlan.Members(type);
+		}
+
+		InjectionPlan.Members members = cache.read(type, hash);
+
+		if (members == null) {
+			members = new InjectionPlan.Members(type);
+			cache.newEntries.put(type.getName(), PlanCache.entry(type, hash, members));
+		}
+
+		return members;
+	}
+
+	private InjectionPlan.Members read(Class<?> type, byte[] hash) {
+		Location location = this.locations.get(type.getName());
+
+		if (location == null) {
+			return null;
+		}
+
+		// Each thread reads through its own view of the buffer.
+		ByteBuffer buffer = this.buffer.duplicate();
+		buffer.position(location.body);
+		buffer.limit(location.end);
+
+		try {
+			byte[] entryHash = new byte[buffer.getShort()];
+			buffer.get(entryHash);
+
+			if (!Arrays.equals(hash, entryHash)) {
+				return null;
+			}
+
+			return PlanCache.bind(type, buffer);
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (NoSuchFieldException e) {
+			return null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// A corrupt entry, or members which can not be made accessible.
+			return null;
+		}
+	}
+
+	private static InjectionPlan.Members bind(Class<?> type, ByteBuffer buffer) throws ClassNotFoundException, NoSuchFieldException,
+																					 NoSuchMethodException {
+		ClassLoader classLoader = type.getClassLoader();
+
+		int fieldCount = buffer.getInt();
+		Field[] dependencyFields = new Field[fieldCount];
+		Class<?>[] dependencyTypes = new Class<?>[fieldCount];
+		InjectionPlan.DependencyKind[] dependencyKinds = new InjectionPlan.DependencyKind[fieldCount];
+
+		for (int i = 0; i < fieldCount; i++) {
+			Class<?> declaringClass = PlanCache.superclass(type, PlanCache.readString(buffer));
+			dependencyFields[i] = declaringClass.getDeclaredField(PlanCache.readString(buffer));
+			dependencyFields[i].setAccessible(true);
+			dependencyKinds[i] = InjectionPlan.DependencyKind.valueOf(PlanCache.readString(buffer));
+			dependencyTypes[i] = PlanCache.classForName(PlanCache.readString(buffer), classLoader);
+		}
+
+		boolean asyncInitializers = buffer.get() != 0;
+		Method[] initializers = PlanCache.bindMethods(type, buffer);
+		Method[] resetters = PlanCache.bindMethods(type, buffer);
+		Constructor<?> defaultConstructor = buffer.get() != 0 ? type.getConstructor() : null;
+		Constructor<?> injectionConstructor = null;
+
+		int parameterCount = buffer.getInt();
+		Class<?>[] constructorDependencyTypes = new Class<?>[Math.max(parameterCount, 0)];
+		InjectionPlan.DependencyKind[] constructorDependencyKinds = new InjectionPlan.DependencyKind[constructorDependencyTypes.length];
+
+		if (parameterCount >= 0) {
+			Class<?>[] parameterTypes = new Class<?>[parameterCount];
+
+			for (int i = 0; i < parameterCount; i++) {
+				parameterTypes[i] = PlanCache.classForName(PlanCache.readString(buffer), classLoader);
+				constructorDependencyKinds[i] = InjectionPlan.DependencyKind.valueOf(PlanCache.readString(buffer));
+				constructorDependencyTypes[i] = PlanCache.classForName(PlanCache.readString(buffer), classLoader);
+			}
+
+			injectionConstructor = type.getDeclaredConstructor(parameterTypes);
+			injectionConstructor.setAccessible(true);
+		}
+
+		return new InjectionPlan.Members(dependencyFields, dependencyTypes, dependencyKinds, initializers, asyncInitializers, resetters,
+										 defaultConstructor, injectionConstructor, constructorDependencyTypes, constructorDependencyKinds);
+	}
+
+	private static Method[] bindMethods(Class<?> type, ByteBuffer buffer) throws NoSuchMethodException {
+		Method[] methods = new Method[buffer.getInt()];
+
+		for (int i = 0; i < methods.length; i++) {
+			methods[i] = type.getMethod(PlanCache.readString(buffer));
+			methods[i].setAccessible(true);
+		}
+
+		return methods;
+	}
+
+	private static Class<?> superclass(Class<?> type, String className) throws ClassNotFoundException {
+		for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+			if (superclass.getName().equals(className)) {
+				return superclass;
+			}
+		}
+
+		throw new ClassNotFoundException(className);
+	}
+
+	private static Class<?> classForName(String className, ClassLoader classLoader) throws ClassNotFoundException {
+		Class<?> primitiveClass = primitiveClasses.get(className);
+
+		return primitiveClass != null ? primitiveClass : Class.forName(className, false, classLoader);
+	}
+
+	/**
+	 * @return the entry of the class, as written to the cache file.
+	 */
+	private static byte[] entry(Class<?> type, byte[] hash, InjectionPlan.Members members) {
+		try {
+			ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+			DataOutputStream body = new DataOutputStream(bodyBytes);
+
+			body.writeShort(hash.length);
+			body.write(hash);
+			body.writeInt(members.dependencyFields.length);
+
+			for (int i = 0; i < members.dependencyFields.length; i++) {
+				Field field = members.dependencyFields[i];
+
+				PlanCache.writeString(body, field.getDeclaringClass().getName());
+				PlanCache.writeString(body, field.getName());
+				PlanCache.writeString(body, members.dependencyKinds[i].name());
+				PlanCache.writeString(body, members.dependencyTypes[i].getName());
+			}
+
+			body.writeByte(members.asyncInitializers ? 1 : 0);
+			PlanCache.writeMethods(body, members.initializers);
+			PlanCache.writeMethods(body, members.resetters);
+			body.writeByte(members.defaultConstructor != null ? 1 : 0);
+
+			if (members.injectionConstructor != null) {
+				Class<?>[] parameterTypes = members.injectionConstructor.getParameterTypes();
+				body.writeInt(parameterTypes.length);
+
+				for (int i = 0; i < parameterTypes.length; i++) {
+					PlanCache.writeString(body, parameterTypes[i].getName());
+					PlanCache.writeString(body, members.constructorDependencyKinds[i].name());
+					PlanCache.writeString(body, members.constructorDependencyTypes[i].getName());
+				}
+			} else {
+				body.writeInt(-1);
+			}
+
+			ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+			DataOutputStream entry = new DataOutputStream(entryBytes);
+
+			PlanCache.writeString(entry, type.getName());
+			entry.writeInt(bodyBytes.size());
+			bodyBytes.writeTo(entry);
+
+			return entryBytes.toByteArray();
+		} catch (IOException e) {
+			// Not thrown by byte array streams.
+			throw new InjectionException("Failed encoding the plan of " + type.getName(), e);
+		}
+	}
+
+	private static void writeMethods(DataOutputStream output, Method[] methods) throws IOException {
+		output.writeInt(methods.length);
+
+		for (Method method : methods) {
+			PlanCache.writeString(output, method.getName());
+		}
+	}
+
+	private static void writeString(DataOutputStream output, String string) throws IOException {
+		byte[] bytes = string.getBytes(UTF8);
+
+		output.writeShort(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * @return the hash of the class files of the class, its superclasses and their
+	 *         interfaces, leaving out those of the bootstrap class loader; null if one of
+	 *         them can not be read.
+	 */
+	private static byte[] hash(Class<?> type) {
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+
+		for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+			PlanCache.addWithInterfaces(superclass, classes);
+		}
+
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+
+		byte[] bytes = new byte[8192];
+
+		for (Class<?> clazz : classes) {
+			InputStream input = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+
+			if (input == null) {
+				return null;
+			}
+
+			try {
+				try {
+					int count;
+
+					while ((count = input.read(bytes)) > 0) {
+						digest.update(bytes, 0, count);
+					}
+				} finally {
+					input.close();
+				}
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		return digest.digest();
+	}
+
+	private static void addWithInterfaces(Class<?> clazz, Set<Class<?>> classes) {
+		if (clazz.getClassLoader() == null || !classes.add(clazz)) {
+			return;
+		}
+
+		for (Class<?> interfaceClass : clazz.getInterfaces()) {
+			PlanCache.addWithInterfaces(interfaceClass, classes);
+		}
+	}
+
+	private synchronized void write() throws IOException {
+		List<byte[]> entries = new ArrayList<byte[]>(this.newEntries.values());
+
+		for (Map.Entry<String, Location> location : this.locations.entrySet()) {
+			if (!this.newEntries.containsKey(location.getKey())) {
+				entries.add(location.getValue().bytes(this.buffer));
+			}
+		}
+
+		File directory = this.file.getAbsoluteFile().getParentFile();
+
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed creating " + directory);
+		}
+
+		// Written to a file of its own and moved over the file, so that other processes
+		// never read a partial file, even when several of them save at once.
+		File temporaryFile = File.createTempFile("." + this.file.getName() + ".", ".tmp", directory);
+		boolean moved = false;
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(entries.size());
+
+			for (byte[] entry : entries) {
+				output.write(entry);
+			}
+
+			output.close();
+			Files.move(temporaryFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+		} finally {
+			output.close();
+
+			if (!moved) {
+				temporaryFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Where an entry is in the cache file: its start, the start of its body (after the class
+	 * name and the length), and its end.
+	 */
+	private static final class Location {
+
+		private final int start;
+
+		private final int body;
+
+		private final int end;
+
+		Location(int start, int body, int end) {
+			this.start = start;
+			this.body = body;
+			this.end = end;
+		}
+
+		byte[] bytes(ByteBuffer buffer) {
+			ByteBuffer view = buffer.duplicate();
+			byte[] bytes = new byte[this.end - this.start];
+
+			view.position(this.start);
+			view.get(bytes);
+
+			return bytes;
+		}
+	}
+}
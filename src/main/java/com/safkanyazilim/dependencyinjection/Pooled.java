@@ -0,0 +1,26 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a class whose objects are reused rather than generated anew. Injector serves them
+ * from a pool, with their dependencies already satisfied, and they are returned to the
+ * pool with Injector.releaseObjectForClass(), after calling their methods marked with
+ * Reset.
+ * </p>
+ *
+ * <p>
+ * Each thread keeps its own pool, holding up to maxSize released objects; objects released
+ * beyond that are left to the garbage collector. An object is only reused in the scope it
+ * was released in.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Pooled {
+	int maxSize() default 16;
+}
@@ -0,0 +1,15 @@
+package com.safkanyazilim.dependencyinjection;
+
+/**
+ * A handle to a dependency which is only constructed (or found, for singletons) when it is
+ * first asked for. Declare a @Dependency field as Provider&lt;T&gt; to receive one.
+ * 
+ * @param <T> the type of the dependency
+ */
+public interface Provider<T> {
+	
+	/**
+	 * @return the dependency; the same object on every call.
+	 */
+	public T get();
+}
@@ -1,9 +1,32 @@
 package com.safkanyazilim.dependencyinjection;
 
+import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 
+/**
+ * <p>
+ * Marks a class as the implementation to be bound to the given classes or interfaces, as if
+ * ObjectFactory.mapClassToClass() was called for each of them. If no classes are given, the
+ * class is bound to each of the interfaces it directly implements, except those of the java
+ * packages, such as Serializable, Comparable or AutoCloseable; give them explicitly to bind
+ * to them.
+ * </p>
+ * 
+ * <p>
+ * A class or interface can only be bound to one implementation: the processor reports an
+ * error for conflicting bindings, and InjectionIndex.load() fails on conflicting bindings
+ * in different index files.
+ * </p>
+ * 
+ * <p>
+ * The bindings are collected at compile time by the processor module into an index file,
+ * and registered at startup by InjectionIndex.load().registerBindings().
+ * </p>
+ */
 @Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
 public @interface Registry {
-
+	Class<?>[] value() default {};
 }
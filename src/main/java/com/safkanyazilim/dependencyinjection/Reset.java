@@ -0,0 +1,16 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a Pooled class to be called when an object is released to its pool,
+ * to clear its state before it is reused.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Reset {
+
+}
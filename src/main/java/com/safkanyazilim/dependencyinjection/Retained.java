@@ -0,0 +1,48 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Selects how a Singleton class is kept by the scope it belongs to. By default singletons
+ * are kept as long as the scope is; a singleton which is large and rarely used can instead
+ * be let go, and is then constructed again (with its dependencies satisfied and its
+ * initializers called) the next time it is requested.
+ * </p>
+ *
+ * <p>
+ * Objects holding on to a singleton which has been let go keep the old instance; only
+ * later requests get the new one. Classes whose singleton must be unique for the lifetime
+ * of the scope should not be retained other than STRONG.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Retained {
+
+	Policy value() default Policy.STRONG;
+
+	/**
+	 * For the IDLE policy, the time in milliseconds after the last request of the singleton
+	 * after which it is let go.
+	 */
+	long idleMillis() default 60000;
+
+	enum Policy {
+		/** Kept as long as the scope. */
+		STRONG,
+		/** Kept through a SoftReference: let go when the heap runs short. */
+		SOFT,
+		/** Kept through a WeakReference: let go once nothing else refers to it. */
+		WEAK,
+		/**
+		 * Let go once it has not been requested for idleMillis, when the scope evicts idle
+		 * singletons: when singletons are put in the scope, at most every half idleMillis,
+		 * or on Scope.evictIdleSingletons().
+		 */
+		IDLE
+	}
+}
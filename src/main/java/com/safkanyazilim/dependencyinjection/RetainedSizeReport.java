@@ -0,0 +1,69 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * The result of Scope.estimateRetainedSizes(): the estimated heap size retained by each
+ * object the scope maps a class to, and the classes of the objects the estimate could not
+ * look into.
+ * </p>
+ *
+ * <p>
+ * Objects whose fields can not be read, such as those of most JDK classes on Java 9 and
+ * later, are counted by their own size only, unless they are maps, collections or strings
+ * (see RetainedSizes). What they refer to is missing from the estimate; opening their
+ * packages with --add-opens lets it be counted.
+ * </p>
+ */
+public final class RetainedSizeReport {
+
+	private final Map<Class<?>, Long> retainedSizes;
+
+	private final Map<Class<?>, Set<Class<?>>> unfollowedClasses;
+
+	RetainedSizeReport(Map<Class<?>, Long> retainedSizes, Map<Class<?>, Set<Class<?>>> unfollowedClasses) {
+		this.retainedSizes = retainedSizes;
+		this.unfollowedClasses = unfollowedClasses;
+	}
+
+	/**
+	 * @return the estimated retained size in bytes, by the class mapped to the object.
+	 */
+	public Map<Class<?>, Long> getRetainedSizes() {
+		return this.retainedSizes;
+	}
+
+	/**
+	 * @return by the class mapped to the object, the classes of the objects it reaches whose
+	 *         fields could not be read, and which were counted by their own size only. Classes
+	 *         whose objects were followed completely are left out.
+	 */
+	public Map<Class<?>, Set<Class<?>>> getUnfollowedClasses() {
+		return this.unfollowedClasses;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+
+		builder.append("Retained sizes of ").append(this.retainedSizes.size()).append(" objects:");
+
+		for (Map.Entry<Class<?>, Long> entry : this.retainedSizes.entrySet()) {
+			builder.append("\n  ").append(entry.getKey().getName()).append(" ").append(entry.getValue()).append(" bytes");
+
+			Set<Class<?>> unfollowed = this.unfollowedClasses.get(entry.getKey());
+
+			if (unfollowed != null) {
+				builder.append(", not following");
+
+				for (Class<?> clazz : unfollowed) {
+					builder.append(" ").append(clazz.getName());
+				}
+			}
+		}
+
+		return builder.toString();
+	}
+}
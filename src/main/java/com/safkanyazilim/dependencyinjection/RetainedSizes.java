@@ -0,0 +1,332 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Estimates the heap size retained by each object of a scope: the objects reachable from it
+ * through its fields, which are not reachable from any other object of the scope. Objects
+ * reachable from several are shared, and not counted for any of them; the objects of the
+ * scope are not counted for each other.
+ * </p>
+ *
+ * <p>
+ * Sizes are estimated for a 64-bit JVM with compressed references: 12 byte object headers,
+ * 16 byte array headers, 4 byte references, rounded up to 8 bytes. Classes, class loaders,
+ * threads and enum constants are not followed.
+ * </p>
+ *
+ * <p>
+ * The fields of JDK classes can not be read on Java 9 and later, unless their packages are
+ * opened with --add-opens. Maps and collections whose fields can not be read are walked
+ * through their entries or elements instead, and their internal tables or arrays estimated
+ * from their size, as for a HashMap or an ArrayList; strings are counted with their
+ * characters. Other objects whose fields can not be read are counted by their own size only,
+ * and reported as not followed.
+ * </p>
+ */
+final class RetainedSizes {
+
+	private static final int OBJECT_HEADER = 12;
+
+	private static final int ARRAY_HEADER = 16;
+
+	private static final int REFERENCE = 4;
+
+	/**
+	 * The size of an entry of a HashMap: a header, the hash, key, value and next references.
+	 */
+	private static final int MAP_ENTRY = 32;
+
+	private static final Object SHARED = new Object();
+
+	/**
+	 * The reference fields and shallow size of each class, found on demand.
+	 */
+	private final Map<Class<?>, Layout> layouts = new HashMap<Class<?>, Layout>();
+
+	/**
+	 * The classes of the objects not followed from the object being walked.
+	 */
+	private Set<Class<?>> unfollowed;
+
+	private RetainedSizes() {
+	}
+
+	/**
+	 * @return the estimated retained size of each object in bytes, in the same order.
+	 */
+	static RetainedSizeReport estimate(Map<Class<?>, Object> objects) {
+		return new RetainedSizes().estimateAll(objects);
+	}
+
+	private RetainedSizeReport estimateAll(Map<Class<?>, Object> objects) {
+		Map<Object, Object> owners = new IdentityHashMap<Object, Object>();
+		Map<Object, Set<Class<?>>> unfollowedClasses = new IdentityHashMap<Object, Set<Class<?>>>();
+
+		for (Object object : objects.values()) {
+			owners.put(object, object);
+		}
+
+		// Each object of the scope claims what it reaches; what two of them reach is shared.
+		// The objects of the scope own themselves.
+
+		for (Object root : objects.values()) {
+			Deque<Object> pending = new ArrayDeque<Object>();
+			this.unfollowed = new LinkedHashSet<Class<?>>();
+			unfollowedClasses.put(root, this.unfollowed);
+			this.pushReferences(root, pending);
+
+			while (!pending.isEmpty()) {
+				Object object = pending.pop();
+				Object owner = owners.get(object);
+
+				if (owner == null) {
+					owners.put(object, root);
+					this.pushReferences(object, pending);
+				} else if (owner != root && owner != SHARED && owner != object) {
+					// What a shared object reaches is shared as well.
+					owners.put(object, SHARED);
+					this.pushReferences(object, pending);
+				}
+			}
+		}
+
+		Map<Object, Long> sizes = new IdentityHashMap<Object, Long>();
+
+		for (Map.Entry<Object, Object> entry : owners.entrySet()) {
+			Object owner = entry.getValue();
+
+			if (owner != SHARED) {
+				Long size = sizes.get(owner);
+				sizes.put(owner, (size != null ? size : 0L) + this.shallowSize(entry.getKey()));
+			}
+		}
+
+		Map<Class<?>, Long> retainedSizes = new LinkedHashMap<Class<?>, Long>();
+		Map<Class<?>, Set<Class<?>>> unfollowed = new LinkedHashMap<Class<?>, Set<Class<?>>>();
+
+		for (Map.Entry<Class<?>, Object> entry : objects.entrySet()) {
+			retainedSizes.put(entry.getKey(), sizes.get(entry.getValue()));
+
+			Set<Class<?>> classes = unfollowedClasses.get(entry.getValue());
+
+			if (!classes.isEmpty()) {
+				unfollowed.put(entry.getKey(), Collections.unmodifiableSet(classes));
+			}
+		}
+
+		return new RetainedSizeReport(Collections.unmodifiableMap(retainedSizes), Collections.unmodifiableMap(unfollowed));
+	}
+
+	private void pushReferences(Object object, Deque<Object> pending) {
+		Class<?> clazz = object.getClass();
+
+		if (clazz.isArray()) {
+			if (!clazz.getComponentType().isPrimitive()) {
+				for (Object element : (Object[])object) {
+					RetainedSizes.push(element, pending);
+				}
+			}
+
+			return;
+		}
+
+		Layout layout = this.layout(clazz);
+
+		for (Field field : layout.references) {
+			try {
+				RetainedSizes.push(field.get(object), pending);
+			} catch (IllegalAccessException e) {
+				// Not followed, see layout().
+			}
+		}
+
+		if (!layout.readable) {
+			this.pushContents(object, pending);
+		}
+	}
+
+	/**
+	 * Pushes what an object whose fields can not be read refers to, as far as its public
+	 * methods tell.
+	 */
+	private void pushContents(Object object, Deque<Object> pending) {
+		if (object instanceof String) {
+			return;
+		}
+
+		try {
+			if (object instanceof Map) {
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>)object).entrySet()) {
+					RetainedSizes.push(entry.getKey(), pending);
+					RetainedSizes.push(entry.getValue(), pending);
+				}
+
+				return;
+			}
+
+			if (object instanceof Collection) {
+				for (Object element : (Collection<?>)object) {
+					RetainedSizes.push(element, pending);
+				}
+
+				return;
+			}
+		} catch (RuntimeException e) {
+			// Changed meanwhile (ConcurrentModificationException), or not iterable at all.
+		}
+
+		this.unfollowed.add(object.getClass());
+	}
+
+	private static void push(Object object, Deque<Object> pending) {
+		if (object != null && !(object instanceof Class) && !(object instanceof ClassLoader) && !(object instanceof Thread)
+			&& !(object instanceof Enum)) {
+			pending.push(object);
+		}
+	}
+
+	private long shallowSize(Object object) {
+		Class<?> clazz = object.getClass();
+
+		if (clazz.isArray()) {
+			Class<?> componentType = clazz.getComponentType();
+			long elementSize = componentType.isPrimitive() ? RetainedSizes.primitiveSize(componentType) : REFERENCE;
+
+			return RetainedSizes.align(ARRAY_HEADER + elementSize * Array.getLength(object));
+		}
+
+		Layout layout = this.layout(clazz);
+
+		return layout.readable ? layout.size : layout.size + RetainedSizes.contentsSize(object);
+	}
+
+	/**
+	 * @return the estimated size of the internal objects of an object whose fields can not be
+	 *         read: the characters of a string (one byte each, as compact strings keep most),
+	 *         the table and entries of a map or set (as a HashMap), the array of another
+	 *         collection (as an ArrayList), or zero for other objects.
+	 */
+	private static long contentsSize(Object object) {
+		try {
+			if (object instanceof String) {
+				return RetainedSizes.align(ARRAY_HEADER + ((String)object).length());
+			} else if (object instanceof Map) {
+				return RetainedSizes.hashTableSize(((Map<?, ?>)object).size());
+			} else if (object instanceof Set) {
+				return RetainedSizes.hashTableSize(((Set<?>)object).size());
+			} else if (object instanceof Collection) {
+				return RetainedSizes.align(ARRAY_HEADER + (long)REFERENCE * ((Collection<?>)object).size());
+			}
+		} catch (RuntimeException e) {
+			// Not sized; see pushContents().
+		}
+
+		return 0;
+	}
+
+	private static long hashTableSize(int size) {
+		if (size == 0) {
+			return 0;
+		}
+
+		// The table is at least 16 long, and resized to keep it at most three quarters full.
+		long tableLength = 16;
+
+		while (tableLength * 3 / 4 < size) {
+			tableLength *= 2;
+		}
+
+		return RetainedSizes.align(ARRAY_HEADER + REFERENCE * tableLength) + (long)MAP_ENTRY * size;
+	}
+
+	private Layout layout(Class<?> clazz) {
+		Layout layout = this.layouts.get(clazz);
+
+		if (layout != null) {
+			return layout;
+		}
+
+		List<Field> references = new ArrayList<Field>();
+		long size = OBJECT_HEADER;
+		boolean readable = true;
+
+		for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+
+				if (field.getType().isPrimitive()) {
+					size += RetainedSizes.primitiveSize(field.getType());
+					continue;
+				}
+
+				size += REFERENCE;
+
+				try {
+					field.setAccessible(true);
+					references.add(field);
+				} catch (RuntimeException e) {
+					// The field can not be read (InaccessibleObjectException, or a
+					// SecurityException); see pushContents().
+					readable = false;
+				}
+			}
+		}
+
+		layout = new Layout(references.toArray(new Field[references.size()]), RetainedSizes.align(size), readable);
+		this.layouts.put(clazz, layout);
+
+		return layout;
+	}
+
+	private static long primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == short.class || type == char.class) {
+			return 2;
+		} else {
+			return 1;
+		}
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	private static final class Layout {
+
+		private final Field[] references;
+
+		private final long size;
+
+		/**
+		 * Whether all reference fields can be read.
+		 */
+		private final boolean readable;
+
+		Layout(Field[] references, long size, boolean readable) {
+			this.references = references;
+			this.size = size;
+			this.readable = readable;
+		}
+	}
+}
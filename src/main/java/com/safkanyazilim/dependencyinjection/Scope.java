@@ -0,0 +1,649 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A container of class to class and class to object mappings. Scopes form a hierarchy: a
+ * lookup which finds nothing in a scope falls through to its parent. The root scope holds
+ * the global mappings; child scopes can be opened, for instance one per request or tenant,
+ * to hold mappings and singletons which should only be visible within them.
+ * </p>
+ *
+ * <p>
+ * Each thread has a current scope, which is the root scope unless a child scope has been
+ * opened on the thread with Scope.open(). The static methods of ObjectFactory and Injector
+ * work on the current scope:
+ * </p>
+ *
+ * <pre>
+ * Scope scope = Scope.open();
+ * try {
+ *     ObjectFactory.mapClassToObject(Request.class, request);
+ *     Handler handler = Injector.generateObjectForClass(Handler.class);
+ *     ...
+ * } finally {
+ *     scope.close();
+ * }
+ * </pre>
+ *
+ * <p>
+ * A singleton is kept in the nearest scope which maps its class, or any class its
+ * dependency graph goes through, to another class or to an object, or in the root scope
+ * otherwise. So a child scope may have its own instance of a singleton by remapping it or
+ * one of its dependencies, and a singleton constructed with the mappings of a child scope
+ * is never seen by the scopes above it. Nor does such a child scope see the instance kept
+ * by the scopes above it, which was constructed without its mappings.
+ * </p>
+ *
+ * <p>
+ * Opening a scope only allocates the scope itself; its maps are created on the first
+ * mapping made in it. Closing a scope releases its mappings, including its singletons.
+ * </p>
+ *
+ * <p>
+ * Once its mappings are complete, for instance after bootstrap for the root scope, a scope
+ * can be frozen with freeze(), after which changing or clearing its mappings fails with an
+ * IllegalStateException. Singletons constructed later are still kept in the scope. Freezing
+ * a child scope also compiles its class mappings into an immutable table (see
+ * FrozenClassMap). Freezing the root scope only seals it: its mappings are kept in class
+ * values, which lookups read without locking or allocating already, while an immutable
+ * table would hold their classes. Object mappings are never compiled, since singletons
+ * are still added to them. Lookups never lock, frozen or not; mappings are made under the
+ * lock of the scope.
+ * </p>
+ *
+ * <p>
+ * Singletons are kept according to the Retained policy of their class. The root scope
+ * keeps its objects (see ObjectTable) and its class mappings (see WeakClassMap) with their
+ * classes, so that mapping a class does not keep its class loader from being unloaded.
+ * </p>
+ */
+public final class Scope implements AutoCloseable {
+
+	private static final Scope root = new Scope(null, null);
+
+	private static final ThreadLocal<Scope> current = new ThreadLocal<Scope>();
+
+	private final Scope parent;
+
+	/**
+	 * The scope that was current on the opening thread before this one was opened with
+	 * open(), to be restored on close().
+	 */
+	private final Scope previous;
+
+	private volatile Map<Class<?>, Class<?>> classToClassMap;
+
+	private volatile ObjectTable objectTable;
+
+	/**
+	 * The class to class mappings of a frozen scope, null until it is frozen.
+	 */
+	private volatile FrozenClassMap<Class<?>> frozenClassMap;
+
+	/**
+	 * Counts the changes to the class mappings of this scope, so that what was found with
+	 * them (see DependencyGraph) can be found again once they change.
+	 */
+	private final AtomicInteger classMappingEpoch = new AtomicInteger();
+
+	/**
+	 * What DependencyGraph found of the graphs of classes with the class mappings of this
+	 * scope and its ancestors, kept with the classes in the root scope; null until something
+	 * is found in a child scope.
+	 */
+	private volatile Map<Class<?>, DependencyGraph.Verdict> acyclicVerdicts;
+
+	/**
+	 * Counts the changes to the objects of this scope, singletons included, so that the
+	 * owners of singletons found with them (see singletonOwner()) are found again.
+	 */
+	private final AtomicInteger objectEpoch = new AtomicInteger();
+
+	/**
+	 * The owners of singletons found by singletonOwner() from this scope; null until one is
+	 * found in a child scope with mappings on its way up.
+	 */
+	private volatile Map<Class<?>, Owner> singletonOwners;
+
+	private volatile boolean frozen;
+
+	private volatile boolean closed;
+
+	private Scope(Scope parent, Scope previous) {
+		this.parent = parent;
+		this.previous = previous;
+
+		if (parent == null) {
+			this.classToClassMap = new WeakClassMap<Class<?>>();
+			this.objectTable = new ObjectTable(true);
+			this.acyclicVerdicts = new WeakClassMap<DependencyGraph.Verdict>();
+		}
+	}
+
+	/**
+	 * @return the root scope, holding the global mappings.
+	 */
+	public static Scope root() {
+		return root;
+	}
+
+	/**
+	 * @return the current scope of the calling thread.
+	 */
+	public static Scope current() {
+		Scope scope = current.get();
+
+		return scope != null ? scope : root;
+	}
+
+	/**
+	 * Opens a child of the current scope, and makes it the current scope of the calling
+	 * thread until it is closed.
+	 *
+	 * @return the new scope
+	 */
+	public static Scope open() {
+		Scope previous = Scope.current();
+		Scope scope = new Scope(previous, previous);
+		current.set(scope);
+
+		return scope;
+	}
+
+	/**
+	 * Creates a child of this scope, without making it current on any thread. Use its
+	 * generateObjectForClass() method to generate objects within it.
+	 *
+	 * @return the new scope
+	 */
+	public Scope newChild() {
+		this.checkOpen();
+
+		return new Scope(this, null);
+	}
+
+	/**
+	 * @return the parent of this scope, or null for the root scope.
+	 */
+	public Scope getParent() {
+		return this.parent;
+	}
+
+	/**
+	 * Generates (or retrieves) an object for the given class like
+	 * Injector.generateObjectForClass(), but within this scope, whatever the current scope
+	 * of the calling thread is.
+	 *
+	 * @param clazz the class to be instantiated/retrieved.
+	 * @return the generated/retrieved object.
+	 */
+	public <T> T generateObjectForClass(Class<T> clazz) {
+		this.checkOpen();
+
+		Scope previous = this.enter();
+
+		try {
+			return Injector.generateObjectForClass(clazz);
+		} finally {
+			Scope.exit(previous);
+		}
+	}
+
+	/**
+	 * Makes this scope current on the calling thread, until exit() is called with the
+	 * returned value.
+	 *
+	 * @return the scope which was current before, or null for the root scope.
+	 */
+	Scope enter() {
+		Scope previous = current.get();
+		current.set(this);
+
+		return previous;
+	}
+
+	static void exit(Scope previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * Seals this scope: its mappings can no longer be changed or cleared, while singletons
+	 * are still kept in it. A child scope also compiles its class mappings into an immutable
+	 * table; the root scope keeps its class mappings as they are. Child scopes are not
+	 * affected. Freezing a frozen scope has no effect.
+	 */
+	public synchronized void freeze() {
+		this.checkOpen();
+
+		if (this.isFrozen()) {
+			return;
+		}
+
+		if (this.parent != null) {
+			Map<Class<?>, Class<?>> classMap = this.classToClassMap;
+
+			this.frozenClassMap = new FrozenClassMap<Class<?>>(classMap != null ? classMap : Collections.<Class<?>, Class<?>>emptyMap());
+			this.classToClassMap = null;
+		}
+
+		this.frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/**
+	 * Releases the mappings of this scope. If the scope was opened with open() and is the
+	 * current scope of the calling thread, the scope that was current before becomes
+	 * current again. The root scope can not be closed.
+	 */
+	@Override
+	public void close() {
+		if (this.parent == null) {
+			throw new IllegalStateException("The root scope can not be closed");
+		}
+
+		this.closed = true;
+		this.classToClassMap = null;
+		this.objectTable = null;
+		this.frozenClassMap = null;
+		this.acyclicVerdicts = null;
+		this.singletonOwners = null;
+
+		if (current.get() == this) {
+			if (this.previous == root) {
+				current.remove();
+			} else {
+				current.set(this.previous);
+			}
+		}
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	private void checkOpen() {
+		if (this.closed) {
+			throw new IllegalStateException("Scope is closed");
+		}
+	}
+
+	private void checkNotFrozen() {
+		if (this.isFrozen()) {
+			throw new IllegalStateException("Scope is frozen");
+		}
+	}
+
+	/**
+	 * @return the object the class is mapped to in this scope or its ancestors, or null.
+	 *         A scope mapping the class to another class hides the objects its ancestors
+	 *         map the class to.
+	 */
+	Object findObject(Class<?> clazz) {
+		for (Scope scope = this; scope != null; scope = scope.parent) {
+			ObjectTable table = scope.objectTable;
+
+			if (table != null) {
+				Object object = table.get(clazz);
+
+				if (object != null) {
+					return object;
+				}
+			}
+
+			if (scope.mapsClass(clazz)) {
+				return null;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the singleton of the class for this scope: the object the class is mapped to in
+	 *         this scope or its ancestors up to the owner of its singletons (see
+	 *         singletonOwner()), or null. The singletons of the scopes above the owner were
+	 *         constructed without its mappings, and are hidden.
+	 */
+	Object findSingleton(Class<?> clazz) {
+		Scope owner = this.singletonOwner(clazz);
+
+		for (Scope scope = this; ; scope = scope.parent) {
+			ObjectTable table = scope.objectTable;
+
+			if (table != null) {
+				Object object = table.get(clazz);
+
+				if (object != null) {
+					return object;
+				}
+			}
+
+			if (scope == owner || scope.mapsClass(clazz)) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return the class the class is mapped to in this scope or its ancestors, or null.
+	 */
+	Class<?> findClass(Class<?> clazz) {
+		for (Scope scope = this; scope != null; scope = scope.parent) {
+			FrozenClassMap<Class<?>> frozenMap = scope.frozenClassMap;
+			Class<?> mappedClass;
+
+			if (frozenMap != null) {
+				mappedClass = frozenMap.get(clazz);
+			} else {
+				Map<Class<?>, Class<?>> map = scope.classToClassMap;
+				mappedClass = map != null ? map.get(clazz) : null;
+			}
+
+			if (mappedClass != null) {
+				return mappedClass;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return true if this scope (not its ancestors) maps the class to another class.
+	 */
+	private boolean mapsClass(Class<?> clazz) {
+		FrozenClassMap<Class<?>> frozenMap = this.frozenClassMap;
+
+		if (frozenMap != null) {
+			return frozenMap.containsKey(clazz);
+		}
+
+		Map<Class<?>, Class<?>> map = this.classToClassMap;
+
+		return map != null && map.containsKey(clazz);
+	}
+
+	/**
+	 * @return the nearest scope, from this one up, which has class mappings of its own (or is
+	 *         frozen), or the root scope: the scopes from this one up to it map classes alike.
+	 */
+	Scope classMappingScope() {
+		for (Scope scope = this; scope.parent != null; scope = scope.parent) {
+			Map<Class<?>, Class<?>> map = scope.classToClassMap;
+
+			if (scope.frozen || (map != null && !map.isEmpty())) {
+				return scope;
+			}
+		}
+
+		return root;
+	}
+
+	/**
+	 * @return a count which changes whenever the class mappings of this scope or of one of its
+	 *         ancestors change.
+	 */
+	int classMappingEpoch() {
+		int epoch = 0;
+
+		for (Scope scope = this; scope != null; scope = scope.parent) {
+			epoch += scope.classMappingEpoch.get();
+		}
+
+		return epoch;
+	}
+
+	DependencyGraph.Verdict getAcyclicVerdict(Class<?> clazz) {
+		Map<Class<?>, DependencyGraph.Verdict> verdicts = this.acyclicVerdicts;
+
+		return verdicts != null ? verdicts.get(clazz) : null;
+	}
+
+	void setAcyclicVerdict(Class<?> clazz, DependencyGraph.Verdict verdict) {
+		Map<Class<?>, DependencyGraph.Verdict> verdicts = this.acyclicVerdicts;
+
+		if (verdicts == null) {
+			synchronized (this) {
+				if (this.closed) {
+					return;
+				}
+
+				verdicts = this.acyclicVerdicts;
+
+				if (verdicts == null) {
+					verdicts = new ConcurrentHashMap<Class<?>, DependencyGraph.Verdict>();
+					this.acyclicVerdicts = verdicts;
+				}
+			}
+		}
+
+		verdicts.put(clazz, verdict);
+	}
+
+	/**
+	 * @return the scope a singleton of the given class is to be kept in, when it is
+	 *         constructed with the mappings of this scope: the nearest scope, from this one
+	 *         up, which maps a class of its dependency graph (see DependencyGraph), or the
+	 *         root scope.
+	 */
+	Scope singletonOwner(Class<?> clazz) {
+		Scope scope = this;
+
+		while (scope.parent != null && !scope.hasMappings()) {
+			scope = scope.parent;
+		}
+
+		if (scope.parent == null) {
+			return root;
+		}
+
+		// The graph is walked once for each class, until the mappings of this scope or of one
+		// of its ancestors change.
+		int epoch = this.mappingEpoch();
+		Map<Class<?>, Owner> owners = this.singletonOwners;
+		Owner owner = owners != null ? owners.get(clazz) : null;
+
+		if (owner == null || owner.epoch != epoch) {
+			owner = new Owner(epoch, Scope.findSingletonOwner(clazz, scope));
+			this.setSingletonOwner(clazz, owner);
+		}
+
+		return owner.scope;
+	}
+
+	private static Scope findSingletonOwner(Class<?> clazz, Scope from) {
+		Set<Class<?>> graph = DependencyGraph.reachableClasses(clazz);
+
+		for (Scope scope = from; scope.parent != null; scope = scope.parent) {
+			ObjectTable table = scope.objectTable;
+
+			for (Class<?> graphClass : graph) {
+				if (scope.mapsClass(graphClass) || (table != null && table.get(graphClass) != null)) {
+					return scope;
+				}
+			}
+		}
+
+		return root;
+	}
+
+	private void setSingletonOwner(Class<?> clazz, Owner owner) {
+		Map<Class<?>, Owner> owners = this.singletonOwners;
+
+		if (owners == null) {
+			synchronized (this) {
+				if (this.closed) {
+					return;
+				}
+
+				owners = this.singletonOwners;
+
+				if (owners == null) {
+					owners = new ConcurrentHashMap<Class<?>, Owner>();
+					this.singletonOwners = owners;
+				}
+			}
+		}
+
+		owners.put(clazz, owner);
+	}
+
+	/**
+	 * @return true if this scope maps classes to classes or to objects, or is frozen.
+	 */
+	private boolean hasMappings() {
+		Map<Class<?>, Class<?>> map = this.classToClassMap;
+
+		return this.frozenClassMap != null || (map != null && !map.isEmpty()) || this.objectTable != null;
+	}
+
+	/**
+	 * @return a count which changes whenever the class or object mappings of this scope or of
+	 *         one of its ancestors change.
+	 */
+	private int mappingEpoch() {
+		int epoch = 0;
+
+		for (Scope scope = this; scope != null; scope = scope.parent) {
+			epoch += scope.classMappingEpoch.get() + scope.objectEpoch.get();
+		}
+
+		return epoch;
+	}
+
+	synchronized void mapClassToClass(Class<?> clazz1, Class<?> clazz2) {
+		this.checkOpen();
+		this.checkNotFrozen();
+
+		if (this.classToClassMap == null) {
+			this.classToClassMap = new ConcurrentHashMap<Class<?>, Class<?>>();
+		}
+
+		this.classToClassMap.put(clazz1, clazz2);
+		this.classMappingEpoch.incrementAndGet();
+	}
+
+	synchronized void mapClassToObject(Class<?> clazz, Object object) {
+		this.checkNotFrozen();
+		this.putObject(clazz, object, null);
+	}
+
+	/**
+	 * Keeps a singleton constructed by the Injector in this scope, frozen or not, according
+	 * to its Retained policy (null for STRONG). Idle singletons are evicted meanwhile, if the
+	 * scope holds any and has not been swept recently.
+	 */
+	synchronized void putSingleton(Class<?> clazz, Object object, Retained retained) {
+		this.putObject(clazz, object, retained);
+		this.objectTable.evictIdleIfDue();
+	}
+
+	/**
+	 * Withdraws a singleton from this scope, if the class is still mapped to it here.
+	 */
+	synchronized void removeSingleton(Class<?> clazz, Object object) {
+		ObjectTable table = this.objectTable;
+
+		if (table != null) {
+			table.remove(clazz, object);
+			this.objectEpoch.incrementAndGet();
+		}
+	}
+
+	private void putObject(Class<?> clazz, Object object, Retained retained) {
+		this.checkOpen();
+
+		if (this.objectTable == null) {
+			this.objectTable = new ObjectTable(false);
+		}
+
+		this.objectTable.put(clazz, object, retained);
+		this.objectEpoch.incrementAndGet();
+	}
+
+	/**
+	 * Lets go of the singletons of this scope with the IDLE retention policy, which have not
+	 * been requested for their idle time. They are constructed again when they are next
+	 * requested. This is also done when a singleton is put in the scope, at most once per
+	 * half the shortest idle time of its singletons.
+	 */
+	public synchronized void evictIdleSingletons() {
+		ObjectTable table = this.objectTable;
+
+		if (table != null) {
+			table.evictIdle();
+		}
+	}
+
+	/**
+	 * Estimates the heap size retained by each object this scope maps a class to, singleton
+	 * or not, that is, the size of the objects only it refers to, directly or not. Objects
+	 * referred to by several objects of the scope are not counted. The estimate assumes a
+	 * 64-bit JVM with compressed references, and follows the fields it can read; maps and
+	 * collections of JDK classes are walked through their elements instead, and the classes
+	 * of other objects it can not look into are reported. It walks the objects
+	 * reflectively, and should not be made often.
+	 *
+	 * @return the estimated retained sizes, by the class mapped to the object.
+	 */
+	public RetainedSizeReport estimateRetainedSizes() {
+		ObjectTable table = this.objectTable;
+
+		if (table == null) {
+			return new RetainedSizeReport(Collections.<Class<?>, Long>emptyMap(), Collections.<Class<?>, Set<Class<?>>>emptyMap());
+		}
+
+		return RetainedSizes.estimate(table.objects());
+	}
+
+	synchronized void clearClassMap() {
+		this.checkNotFrozen();
+
+		Map<Class<?>, Class<?>> map = this.classToClassMap;
+
+		if (map != null) {
+			map.clear();
+		}
+
+		this.classMappingEpoch.incrementAndGet();
+	}
+
+	synchronized void clearObjectMap() {
+		this.checkNotFrozen();
+
+		ObjectTable table = this.objectTable;
+
+		if (table != null) {
+			table.clear();
+		}
+
+		this.objectEpoch.incrementAndGet();
+	}
+
+	/**
+	 * The scope owning the singletons of a class, with the mapping epoch it was found with.
+	 */
+	private static final class Owner {
+
+		private final int epoch;
+
+		private final Scope scope;
+
+		Owner(int epoch, Scope scope) {
+			this.epoch = epoch;
+			this.scope = scope;
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * Eagerly constructs all singletons reachable from a set of root classes. The dependency
+ * graph of the singletons is built ahead of time (a singleton depends on another if it is
+ * reachable through its non-lazy dependency fields, possibly via non-singleton objects), and the
+ * singletons are then constructed in topological order, with independent branches running
+ * in parallel on the given executor.
+ * </p>
+ * 
+ * <p>
+ * Singletons which are part of a dependency cycle can not be ordered; they are constructed
+ * one by one on the calling thread after all the others, which fails with an
+ * InjectionException naming the classes on the cycle, as it would lazily. Cycles broken by
+ * objects mapped in the scope are not cycles to the Injector, and construct fine.
+ * </p>
+ * 
+ * <p>
+ * All singletons are constructed within the scope which is current on the calling thread.
+ * </p>
+ */
+final class SingletonWarmup {
+	
+	/**
+	 * Singleton to the singletons it depends on, in discovery order.
+	 */
+	private final Map<Class<?>, Set<Class<?>>> graph = new LinkedHashMap<Class<?>, Set<Class<?>>>();
+	
+	/**
+	 * The singletons reached which were constructed, or mapped to objects, before the warm-up.
+	 */
+	private final Set<Class<?>> constructedBefore = new LinkedHashSet<Class<?>>();
+	
+	private final Map<Class<?>, Long> constructionNanos = new ConcurrentHashMap<Class<?>, Long>();
+	
+	private final Scope scope = Scope.current();
+	
+	private SingletonWarmup() {
+	}
+	
+	static WarmupReport warmUp(Collection<? extends Class<?>> rootClasses, Executor executor) {
+		long start = System.nanoTime();
+		
+		SingletonWarmup warmup = new SingletonWarmup();
+		warmup.buildGraph(rootClasses);
+		
+		List<Class<?>> order = new ArrayList<Class<?>>();
+		List<Class<?>> cyclic = new ArrayList<Class<?>>();
+		warmup.sort(order, cyclic);
+		
+		warmup.constructInParallel(order, executor);
+		
+		for (Class<?> clazz : cyclic) {
+			warmup.construct(clazz);
+		}
+		
+		return warmup.report(order, cyclic, System.nanoTime() - start);
+	}
+	
+	private void buildGraph(Collection<? extends Class<?>> rootClasses) {
+		Deque<Class<?>> pending = new ArrayDeque<Class<?>>();
+		
+		for (Class<?> rootClass : rootClasses) {
+			if (Injector.classIsSingleton(rootClass)) {
+				pending.add(rootClass);
+			} else {
+				pending.addAll(singletonDependencies(rootClass));
+			}
+		}
+		
+		while (!pending.isEmpty()) {
+			Class<?> singleton = pending.remove();
+			
+			if (this.graph.containsKey(singleton) || this.constructedBefore.contains(singleton)) {
+				continue;
+			}
+			
+			if (this.scope.findSingleton(singleton) != null) {
+				this.constructedBefore.add(singleton);
+				continue;
+			}
+			
+			Set<Class<?>> dependencies = singletonDependencies(singleton);
+			this.graph.put(singleton, dependencies);
+			pending.addAll(dependencies);
+		}
+		
+		// Singletons mapped to objects externally are not part of the graph, and need
+		// not be waited for.
+		
+		for (Set<Class<?>> dependencies : this.graph.values()) {
+			dependencies.retainAll(this.graph.keySet());
+		}
+	}
+	
+	/**
+	 * Finds the singletons the given class depends on, directly or through non-singleton
+	 * dependencies.
+	 */
+	private static Set<Class<?>> singletonDependencies(Class<?> clazz) {
+		Set<Class<?>> singletons = new LinkedHashSet<Class<?>>();
+		Set<Class<?>> visited = new HashSet<Class<?>>();
+		Deque<Class<?>> pending = new ArrayDeque<Class<?>>();
+		
+		pending.add(clazz);
+		visited.add(clazz);
+		
+		while (!pending.isEmpty()) {
+			Class<?> current = pending.remove();
+			
+			if (ObjectFactory.isClassMappedToObject(current)) {
+				continue;
+			}
+			
+			InjectionPlan plan = InjectionPlan.forClass(ObjectFactory.resolveClass(current));
+			
+			for (int i = 0; i < plan.getConstructorDependencyCount(); i++) {
+				addDependency(plan.getConstructorDependencyKind(i), plan.getConstructorDependencyType(i), singletons, visited, pending);
+			}
+			
+			for (int i = 0; i < plan.getDependencyCount(); i++) {
+				addDependency(plan.getDependencyKind(i), plan.getDependencyType(i), singletons, visited, pending);
+			}
+		}
+		
+		return singletons;
+	}
+	
+	private static void addDependency(InjectionPlan.DependencyKind kind, Class<?> dependencyType, Set<Class<?>> singletons,
+									  Set<Class<?>> visited, Deque<Class<?>> pending) {
+		if (kind != InjectionPlan.DependencyKind.DIRECT) {
+			// Lazy dependencies are constructed on first use, not with the object.
+			return;
+		}
+		
+		if (Injector.classIsSingleton(dependencyType)) {
+			singletons.add(dependencyType);
+		} else if (visited.add(dependencyType)) {
+			pending.add(dependencyType);
+		}
+	}
+	
+	/**
+	 * Orders the singletons so that each comes after the singletons it depends on (Kahn's
+	 * algorithm). Singletons left over are on, or depend on, a cycle.
+	 */
+	private void sort(List<Class<?>> order, List<Class<?>> cyclic) {
+		Map<Class<?>, Integer> remainingDependencies = new HashMap<Class<?>, Integer>();
+		Map<Class<?>, List<Class<?>>> dependents = new HashMap<Class<?>, List<Class<?>>>();
+		Deque<Class<?>> ready = new ArrayDeque<Class<?>>();
+		
+		for (Map.Entry<Class<?>, Set<Class<?>>> entry : this.graph.entrySet()) {
+			remainingDependencies.put(entry.getKey(), entry.getValue().size());
+			
+			for (Class<?> dependency : entry.getValue()) {
+				List<Class<?>> list = dependents.get(dependency);
+				
+				if (list == null) {
+					list = new ArrayList<Class<?>>();
+					dependents.put(dependency, list);
+				}
+				
+				list.add(entry.getKey());
+			}
+			
+			if (entry.getValue().isEmpty()) {
+				ready.add(entry.getKey());
+			}
+		}
+		
+		while (!ready.isEmpty()) {
+			Class<?> singleton = ready.remove();
+			order.add(singleton);
+			
+			List<Class<?>> list = dependents.get(singleton);
+			
+			if (list != null) {
+				for (Class<?> dependent : list) {
+					int remaining = remainingDependencies.get(dependent) - 1;
+					remainingDependencies.put(dependent, remaining);
+					
+					if (remaining == 0) {
+						ready.add(dependent);
+					}
+				}
+			}
+		}
+		
+		for (Class<?> singleton : this.graph.keySet()) {
+			if (remainingDependencies.get(singleton) > 0) {
+				cyclic.add(singleton);
+			}
+		}
+	}
+	
+	private void constructInParallel(List<Class<?>> order, Executor executor) {
+		Map<Class<?>, CompletableFuture<Void>> futures = new HashMap<Class<?>, CompletableFuture<Void>>();
+		
+		for (final Class<?> singleton : order) {
+			Set<Class<?>> dependencies = this.graph.get(singleton);
+			CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[dependencies.size()];
+			int i = 0;
+			
+			for (Class<?> dependency : dependencies) {
+				dependencyFutures[i++] = futures.get(dependency);
+			}
+			
+			CompletableFuture<Void> future = CompletableFuture.allOf(dependencyFutures).thenRunAsync(new Runnable() {
+				@Override
+				public void run() {
+					SingletonWarmup.this.construct(singleton);
+				}
+			}, executor);
+			
+			futures.put(singleton, future);
+		}
+		
+		try {
+			CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			
+			if (cause instanceof InjectionException) {
+				throw (InjectionException)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
+			} else {
+				throw new InjectionException("Singleton warm-up failed", cause);
+			}
+		}
+	}
+	
+	private void construct(Class<?> singleton) {
+		long start = System.nanoTime();
+		this.scope.generateObjectForClass(singleton);
+		this.constructionNanos.put(singleton, System.nanoTime() - start);
+	}
+	
+	private WarmupReport report(List<Class<?>> order, List<Class<?>> cyclic, long elapsedNanos) {
+		Map<Class<?>, Long> nanos = new LinkedHashMap<Class<?>, Long>();
+		
+		for (Class<?> singleton : this.constructedBefore) {
+			nanos.put(singleton, 0L);
+		}
+		
+		for (Class<?> singleton : order) {
+			nanos.put(singleton, this.constructionNanos.get(singleton));
+		}
+		
+		for (Class<?> singleton : cyclic) {
+			nanos.put(singleton, this.constructionNanos.get(singleton));
+		}
+		
+		// Longest path through the (acyclic) graph, weighted by construction time. As the
+		// order is topological, the dependencies of each singleton are done before it.
+		
+		Map<Class<?>, Long> finish = new HashMap<Class<?>, Long>();
+		Map<Class<?>, Class<?>> predecessor = new HashMap<Class<?>, Class<?>>();
+		Class<?> last = null;
+		
+		for (Class<?> singleton : order) {
+			long longest = 0;
+			Class<?> longestDependency = null;
+			
+			for (Class<?> dependency : this.graph.get(singleton)) {
+				if (longestDependency == null || finish.get(dependency) > longest) {
+					longest = finish.get(dependency);
+					longestDependency = dependency;
+				}
+			}
+			
+			if (longestDependency != null) {
+				predecessor.put(singleton, longestDependency);
+			}
+			
+			finish.put(singleton, longest + nanos.get(singleton));
+			
+			if (last == null || finish.get(singleton) > finish.get(last)) {
+				last = singleton;
+			}
+		}
+		
+		LinkedList<Class<?>> criticalPath = new LinkedList<Class<?>>();
+		long criticalPathNanos = last == null ? 0 : finish.get(last);
+		
+		for (Class<?> singleton = last; singleton != null; singleton = predecessor.get(singleton)) {
+			criticalPath.addFirst(singleton);
+		}
+		
+		// Cyclic singletons are constructed sequentially after all the others.
+		
+		for (Class<?> singleton : cyclic) {
+			criticalPath.addLast(singleton);
+			criticalPathNanos += nanos.get(singleton);
+		}
+		
+		return new WarmupReport(Collections.unmodifiableMap(nanos), Collections.unmodifiableList(criticalPath), criticalPathNanos, elapsedNanos);
+	}
+}
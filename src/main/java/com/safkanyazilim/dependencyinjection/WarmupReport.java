@@ -0,0 +1,83 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The result of Injector.warmUpSingletons(): how long the construction of each singleton
+ * took (including its initializers, and any non-singleton objects it depends on), and the
+ * critical path, that is, the chain of singletons depending on each other whose construction
+ * took the longest in total. The critical path is the lower bound on the warm-up time, no
+ * matter how many threads are used.
+ * </p>
+ * 
+ * <p>
+ * Singletons which were already constructed, or mapped to objects, before the warm-up are
+ * reported with a construction time of zero, and are not on the critical path.
+ * </p>
+ */
+public final class WarmupReport {
+	
+	private final Map<Class<?>, Long> constructionNanos;
+	
+	private final List<Class<?>> criticalPath;
+	
+	private final long criticalPathNanos;
+	
+	private final long elapsedNanos;
+	
+	WarmupReport(Map<Class<?>, Long> constructionNanos, List<Class<?>> criticalPath, long criticalPathNanos, long elapsedNanos) {
+		this.constructionNanos = constructionNanos;
+		this.criticalPath = criticalPath;
+		this.criticalPathNanos = criticalPathNanos;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	/**
+	 * @return the construction time of each singleton in nanoseconds, in the order they
+	 *         were scheduled (dependencies before the singletons depending on them), after
+	 *         those constructed before the warm-up.
+	 */
+	public Map<Class<?>, Long> getConstructionNanos() {
+		return this.constructionNanos;
+	}
+	
+	/**
+	 * @return the singletons on the critical path, each one depending on the one before it.
+	 */
+	public List<Class<?>> getCriticalPath() {
+		return this.criticalPath;
+	}
+	
+	/**
+	 * @return the sum of the construction times of the singletons on the critical path, in
+	 *         nanoseconds.
+	 */
+	public long getCriticalPathNanos() {
+		return this.criticalPathNanos;
+	}
+	
+	/**
+	 * @return the wall clock time the whole warm-up took, in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append("Warmed up ").append(this.constructionNanos.size()).append(" singletons in ")
+			   .append(this.elapsedNanos / 1000000).append(" ms, critical path ")
+			   .append(this.criticalPathNanos / 1000000).append(" ms:");
+		
+		for (Class<?> clazz : this.criticalPath) {
+			builder.append("\n  ").append(clazz.getName()).append(" ")
+				   .append(this.constructionNanos.get(clazz) / 1000000).append(" ms");
+		}
+		
+		return builder.toString();
+	}
+}
@@ -0,0 +1,132 @@
+package com.safkanyazilim.dependencyinjection;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * A map keyed by classes which does not keep its classes (and their class loaders) from
+ * being unloaded: each value is kept with its class, in a ClassValue, and the classes are
+ * only referred to weakly otherwise, to go through the entries. A value referring to its
+ * own class does not keep it either; a value referring to other classes does keep those.
+ * </p>
+ *
+ * <p>
+ * Lookups do not lock or allocate, once a class has been looked up. Null values are not
+ * supported. Going through the entries (entrySet(), size()) makes a snapshot.
+ * </p>
+ *
+ * @param <V> the type of the values
+ */
+final class WeakClassMap<V> extends AbstractMap<Class<?>, V> {
+
+	/**
+	 * The values, replaced by a new ClassValue when the map is cleared.
+	 */
+	private volatile ClassValue<AtomicReference<V>> values = WeakClassMap.newValues();
+
+	/**
+	 * The classes which have been put in the map, to go through its entries.
+	 */
+	private final ConcurrentMap<ClassReference, Boolean> classes = new ConcurrentHashMap<ClassReference, Boolean>();
+
+	private final ReferenceQueue<Class<?>> unloadedClasses = new ReferenceQueue<Class<?>>();
+
+	private static <V> ClassValue<AtomicReference<V>> newValues() {
+		return new ClassValue<AtomicReference<V>>() {
+			@Override
+			protected AtomicReference<V> computeValue(Class<?> type) {
+				return new AtomicReference<V>();
+			}
+		};
+	}
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Class ? this.values.get((Class<?>)key).get() : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return this.get(key) != null;
+	}
+
+	@Override
+	public V put(Class<?> clazz, V value) {
+		this.register(clazz);
+
+		return this.values.get(clazz).getAndSet(value);
+	}
+
+	@Override
+	public V putIfAbsent(Class<?> clazz, V value) {
+		AtomicReference<V> holder = this.values.get(clazz);
+		V existing = holder.get();
+
+		if (existing != null) {
+			return existing;
+		}
+
+		this.register(clazz);
+
+		return holder.compareAndSet(null, value) ? null : holder.get();
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (!(key instanceof Class)) {
+			return null;
+		}
+
+		Class<?> clazz = (Class<?>)key;
+		this.classes.remove(new ClassReference(clazz, null));
+
+		return this.values.get(clazz).getAndSet(null);
+	}
+
+	@Override
+	public void clear() {
+		this.values = WeakClassMap.newValues();
+		this.classes.clear();
+	}
+
+	@Override
+	public Set<Map.Entry<Class<?>, V>> entrySet() {
+		this.expungeUnloadedClasses();
+
+		Map<Class<?>, V> entries = new LinkedHashMap<Class<?>, V>();
+		ClassValue<AtomicReference<V>> values = this.values;
+
+		for (ClassReference reference : this.classes.keySet()) {
+			Class<?> clazz = reference.get();
+			V value = clazz != null ? values.get(clazz).get() : null;
+
+			if (value != null) {
+				entries.put(clazz, value);
+			}
+		}
+
+		return Collections.unmodifiableMap(entries).entrySet();
+	}
+
+	private void register(Class<?> clazz) {
+		this.expungeUnloadedClasses();
+		this.classes.put(new ClassReference(clazz, this.unloadedClasses), Boolean.TRUE);
+	}
+
+	private void expungeUnloadedClasses() {
+		Reference<? extends Class<?>> reference;
+
+		while ((reference = this.unloadedClasses.poll()) != null) {
+			this.classes.remove(reference);
+		}
+	}
+}
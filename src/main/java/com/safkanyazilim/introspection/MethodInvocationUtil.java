@@ -1,43 +1,240 @@
 package com.safkanyazilim.introspection;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public abstract class MethodInvocationUtil {
-	
-	private static Map<String, Method> methodMap = new HashMap<String, Method>();
-	
+
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	/**
+	 * Resolved invokers per class, then per method name. Held in a ClassValue so they do not
+	 * prevent the class from being unloaded.
+	 */
+	private static final ClassValue<ConcurrentMap<String, ResolvedMethods>> resolvedMethods = new ClassValue<ConcurrentMap<String, ResolvedMethods>>() {
+		@Override
+		protected ConcurrentMap<String, ResolvedMethods> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String, ResolvedMethods>();
+		}
+	};
+
+	/**
+	 * <p>
+	 * Invokes the method with the given name, declared by the given class or one of its
+	 * superclasses, on the given object (which is ignored for static methods). The method is
+	 * chosen among the overloads with as many parameters as there are arguments, by the
+	 * classes of the arguments: each argument must be assignable to its parameter, a null
+	 * argument matching any non-primitive parameter, and a wrapper argument matching its
+	 * primitive parameter. If several overloads apply, the most specific one is chosen.
+	 * </p>
+	 *
+	 * <p>
+	 * The resolved method is cached as a MethodHandle, keyed by the classes of the arguments
+	 * (null arguments included), so repeated invocations with arguments of the same classes
+	 * neither look up nor allocate anything other than the boxed result. The cache is safe to
+	 * use from any number of threads.
+	 * </p>
+	 *
+	 * @throws NoSuchMethodException if no overload applies, or several apply and none of them
+	 *         is the most specific.
+	 * @throws IllegalAccessException if the method can not be made accessible.
+	 * @throws IllegalArgumentException if the method is not static, and the object is not an
+	 *         instance of the class declaring it.
+	 * @throws InvocationTargetException wrapping anything thrown by the method itself.
+	 */
 	public static Object InvokeMethodOfClass(Class<?> clazz,String methodName,Object objectInvoketFrom,Object... args) throws SecurityException, NoSuchMethodException, IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-		
-		String key = methodName + " " + clazz.getCanonicalName();
-	    Method method = methodMap.get(key);
-			
+
+		if (args == null) {
+			args = NO_ARGUMENTS;
+		}
+
+		ConcurrentMap<String, ResolvedMethods> methodsOfClass = resolvedMethods.get(clazz);
+		ResolvedMethods methods = methodsOfClass.get(methodName);
+		ResolvedMethod method = methods != null ? methods.find(args) : null;
+
 		if (method == null) {
-		 method = null;
-			if (args.length == 0) {
-				method = clazz.getDeclaredMethod(methodName);
-			} else if (args.length == 1) {
-				method = clazz.getDeclaredMethod(methodName, args[0].getClass());
-			} else if (args.length == 2) {
-				method = clazz.getDeclaredMethod(methodName, args[0].getClass(),args[1].getClass());
-			} else if (args.length == 3) {
-				method = clazz.getDeclaredMethod(methodName, args[0].getClass(),args[1].getClass(),args[2].getClass());
-			} else if (args.length == 4) {
-				method = clazz.getDeclaredMethod(methodName, args[0].getClass(),args[1].getClass(),args[2].getClass(),args[3].getClass());
+			method = resolveMethod(clazz, methodName, args);
+
+			// Racing threads may each add an entry; at worst, a lost entry is resolved again.
+			methodsOfClass.put(methodName, methods != null ? methods.with(method) : new ResolvedMethods(method));
+		}
+
+		if (!method.isStatic) {
+			if (objectInvoketFrom == null) {
+				throw new NullPointerException("Can not invoke instance method " + methodName + " on null");
 			}
-			methodMap.put(key, method);
-		} 
-		
-		return method.invoke(objectInvoketFrom, args);
+
+			if (!method.declaringClass.isInstance(objectInvoketFrom)) {
+				throw new IllegalArgumentException("Object of class " + objectInvoketFrom.getClass().getName()
+												   + " is not an instance of " + method.declaringClass.getName());
+			}
+		}
+
+		try {
+			return method.invoker.invokeExact(objectInvoketFrom, args);
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	private static ResolvedMethod resolveMethod(Class<?> clazz, String methodName, Object[] args) throws NoSuchMethodException, IllegalAccessException {
+		List<Method> candidates = new ArrayList<Method>();
+
+		for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+			for (Method method : type.getDeclaredMethods()) {
+				if (method.getName().equals(methodName) && !method.isBridge() && !method.isSynthetic()
+						&& isApplicable(method.getParameterTypes(), args) && !isOverridden(method, candidates)) {
+					candidates.add(method);
+				}
+			}
+		}
+
+		Method method = mostSpecific(candidates);
+
+		if (method == null) {
+			throw new NoSuchMethodException((candidates.isEmpty() ? "No method " : "Ambiguous method ") + clazz.getName() + "."
+											+ methodName + " for arguments of classes " + Arrays.toString(argumentClasses(args)));
+		}
+
+		return new ResolvedMethod(argumentClasses(args), method, invokerFor(method));
+	}
+
+	private static boolean isApplicable(Class<?>[] parameterTypes, Object[] args) {
+		if (parameterTypes.length != args.length) {
+			return false;
+		}
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] == null) {
+				if (parameterTypes[i].isPrimitive()) {
+					return false;
+				}
+			} else if (!wrap(parameterTypes[i]).isInstance(args[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isOverridden(Method method, List<Method> subclassMethods) {
+		for (Method subclassMethod : subclassMethods) {
+			if (Arrays.equals(subclassMethod.getParameterTypes(), method.getParameterTypes())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the candidate whose parameters are all assignable to the parameters of every
+	 *         other candidate, or null if there is no such candidate.
+	 */
+	private static Method mostSpecific(List<Method> candidates) {
+		for (Method candidate : candidates) {
+			boolean mostSpecific = true;
+
+			for (Method other : candidates) {
+				if (other != candidate && !isAssignable(candidate.getParameterTypes(), other.getParameterTypes())) {
+					mostSpecific = false;
+					break;
+				}
+			}
+
+			if (mostSpecific) {
+				return candidate;
+			}
+		}
+
+		return null;
 	}
-	
+
+	private static boolean isAssignable(Class<?>[] from, Class<?>[] to) {
+		for (int i = 0; i < from.length; i++) {
+			if (!wrap(to[i]).isAssignableFrom(wrap(from[i]))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates a handle of type (Object,Object[])Object invoking the method with the given
+	 * receiver (ignored for static methods) and arguments. A void method returns null.
+	 */
+	private static MethodHandle invokerFor(Method method) throws IllegalAccessException {
+		MethodHandle handle;
+
+		try {
+			handle = lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			method.setAccessible(true);
+			handle = lookup.unreflect(method);
+		}
+
+		int arity = method.getParameterTypes().length;
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+		handle = handle.asType(MethodType.genericMethodType(isStatic ? arity : arity + 1))
+				.asSpreader(Object[].class, arity);
+
+		if (isStatic) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+
+		return handle;
+	}
+
+	private static Class<?>[] argumentClasses(Object[] args) {
+		Class<?>[] classes = new Class<?>[args.length];
+
+		for (int i = 0; i < args.length; i++) {
+			classes[i] = args[i] != null ? args[i].getClass() : null;
+		}
+
+		return classes;
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return type;
+		} else if (type == int.class) {
+			return Integer.class;
+		} else if (type == long.class) {
+			return Long.class;
+		} else if (type == boolean.class) {
+			return Boolean.class;
+		} else if (type == double.class) {
+			return Double.class;
+		} else if (type == float.class) {
+			return Float.class;
+		} else if (type == char.class) {
+			return Character.class;
+		} else if (type == byte.class) {
+			return Byte.class;
+		} else if (type == short.class) {
+			return Short.class;
+		} else {
+			return Void.class;
+		}
+	}
+
 	 public static Object instantiateObject(Class<?> clazz) throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
 		    
 	    	Constructor<?> constructor = clazz.getConstructor((Class[]) null);
@@ -64,4 +261,69 @@ public abstract class MethodInvocationUtil {
 	     		list.add(element);
 	     	}
 	 }
+
+	/**
+	* A method resolved for arguments of given classes (null for null arguments).
+	*/
+	private static final class ResolvedMethod {
+		private final Class<?>[] argumentClasses;
+
+		private final Class<?> declaringClass;
+
+		private final boolean isStatic;
+
+		private final MethodHandle invoker;
+
+		ResolvedMethod(Class<?>[] argumentClasses, Method method, MethodHandle invoker) {
+			this.argumentClasses = argumentClasses;
+			this.declaringClass = method.getDeclaringClass();
+			this.isStatic = Modifier.isStatic(method.getModifiers());
+			this.invoker = invoker;
+		}
+
+		boolean matches(Object[] args) {
+			if (this.argumentClasses.length != args.length) {
+				return false;
+			}
+
+			for (int i = 0; i < args.length; i++) {
+				Class<?> argumentClass = args[i] != null ? args[i].getClass() : null;
+
+				if (argumentClass != this.argumentClasses[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	* The methods of a given name resolved so far, an immutable list which is replaced
+	* whenever a method is added.
+	*/
+	private static final class ResolvedMethods {
+		private final ResolvedMethod[] methods;
+
+		ResolvedMethods(ResolvedMethod... methods) {
+			this.methods = methods;
+		}
+
+		ResolvedMethod find(Object[] args) {
+			for (ResolvedMethod method : this.methods) {
+				if (method.matches(args)) {
+					return method;
+				}
+			}
+
+			return null;
+		}
+
+		ResolvedMethods with(ResolvedMethod method) {
+			ResolvedMethod[] newMethods = Arrays.copyOf(this.methods, this.methods.length + 1);
+			newMethods[this.methods.length] = method;
+
+			return new ResolvedMethods(newMethods);
+		}
+	}
 }
@@ -0,0 +1,112 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChildScopeTest {
+
+	public interface Service {
+	}
+
+	public static class ParentService implements Service {
+	}
+
+	public static class ChildService implements Service {
+	}
+
+	@Singleton
+	public static class Consumer {
+		@Dependency
+		public Service service;
+	}
+
+	@Singleton
+	public static class Independent {
+	}
+
+	private Scope parent;
+
+	@Before
+	public void openScope() {
+		this.parent = Scope.open();
+		this.parent.mapClassToClass(Service.class, ParentService.class);
+	}
+
+	@After
+	public void closeScope() {
+		this.parent.close();
+	}
+
+	@Test
+	public void childScopesFallThroughToTheirParent() {
+		Scope child = this.parent.newChild();
+
+		try {
+			assertTrue(child.generateObjectForClass(Service.class) instanceof ParentService);
+
+			child.mapClassToClass(Service.class, ChildService.class);
+
+			assertTrue(child.generateObjectForClass(Service.class) instanceof ChildService);
+			assertTrue(this.parent.generateObjectForClass(Service.class) instanceof ParentService);
+		} finally {
+			child.close();
+		}
+	}
+
+	@Test
+	public void singletonsBelongToTheScopeMappingTheirDependencies() {
+		Consumer parentConsumer = this.parent.generateObjectForClass(Consumer.class);
+		Scope child = this.parent.newChild();
+
+		try {
+			child.mapClassToClass(Service.class, ChildService.class);
+
+			Consumer childConsumer = child.generateObjectForClass(Consumer.class);
+
+			assertNotSame(parentConsumer, childConsumer);
+			assertTrue(childConsumer.service instanceof ChildService);
+			assertSame(childConsumer, child.generateObjectForClass(Consumer.class));
+			assertSame(parentConsumer, this.parent.generateObjectForClass(Consumer.class));
+		} finally {
+			child.close();
+		}
+	}
+
+	@Test
+	public void singletonsAreReleasedWhenTheirScopeIsClosed() {
+		Scope child = this.parent.newChild();
+		child.mapClassToClass(Service.class, ChildService.class);
+		Consumer consumer = child.generateObjectForClass(Consumer.class);
+		child.close();
+
+		child = this.parent.newChild();
+
+		try {
+			child.mapClassToClass(Service.class, ChildService.class);
+
+			assertNotSame(consumer, child.generateObjectForClass(Consumer.class));
+		} finally {
+			child.close();
+		}
+	}
+
+	@Test
+	public void singletonsNotDependingOnMappedClassesBelongToTheRootScope() {
+		Scope child = this.parent.newChild();
+		Independent independent;
+
+		try {
+			child.mapClassToClass(Service.class, ChildService.class);
+			independent = child.generateObjectForClass(Independent.class);
+		} finally {
+			child.close();
+		}
+
+		assertSame(independent, Injector.generateObjectForClass(Independent.class));
+	}
+}
@@ -0,0 +1,69 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class DependencyCycleTest {
+
+	public static class First {
+		@Dependency
+		public Second second;
+	}
+
+	public static class Second {
+		@Dependency
+		public Third third;
+	}
+
+	public static class Third {
+		@Dependency
+		public First first;
+	}
+
+	@Singleton
+	public static class Client {
+		@Dependency
+		public Provider<Server> server;
+	}
+
+	@Singleton
+	public static class Server {
+		@Dependency
+		public Client client;
+	}
+
+	@Test
+	public void cyclesAreReportedWithTheirPath() {
+		try {
+			Injector.generateObjectForClass(First.class);
+			fail("Generating a cycle succeeded");
+		} catch (InjectionException e) {
+			assertEquals("Dependency cycle: " + First.class.getCanonicalName() + " -> " + Second.class.getCanonicalName() + " -> "
+						 + Third.class.getCanonicalName() + " -> " + First.class.getCanonicalName()
+						 + "; use a Provider or a lazy dependency to break it", e.getMessage());
+		}
+	}
+
+	@Test
+	public void cyclesAreReportedFromAnyOfTheirClasses() {
+		try {
+			Injector.generateObjectForClass(Third.class);
+			fail("Generating a cycle succeeded");
+		} catch (InjectionException e) {
+			assertEquals("Dependency cycle: " + Third.class.getCanonicalName() + " -> " + First.class.getCanonicalName() + " -> "
+						 + Second.class.getCanonicalName() + " -> " + Third.class.getCanonicalName()
+						 + "; use a Provider or a lazy dependency to break it", e.getMessage());
+		}
+	}
+
+	@Test
+	public void providersBreakCycles() {
+		Client client = Injector.generateObjectForClass(Client.class);
+		Server server = client.server.get();
+
+		assertSame(client, server.client);
+	}
+}
@@ -0,0 +1,144 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FactoryCompilerTest {
+
+	private static final int ATTEMPTS = 5;
+
+	public static class Exploding {
+		public Exploding() {
+			throw new IllegalStateException("constructor");
+		}
+	}
+
+	public static class DependsOnExploding {
+		@Dependency
+		public Exploding exploding;
+	}
+
+	public static class ExplodingReflectively {
+		public ExplodingReflectively() {
+			throw new IllegalStateException("constructor");
+		}
+	}
+
+	public static class FailingInitializer {
+		@Initializer
+		public void initialize() {
+			throw new IllegalStateException("initializer");
+		}
+	}
+
+	public static class Chain {
+		@Dependency
+		public Leaf leaf;
+
+		public boolean initialized;
+
+		@Initializer
+		public void initialize() {
+			this.initialized = this.leaf != null;
+		}
+	}
+
+	public static class Leaf {
+	}
+
+	private int threshold;
+
+	private AccessorEngine engine;
+
+	@Before
+	public void compileEarly() {
+		this.threshold = Injector.getCompileThreshold();
+		this.engine = ObjectFactory.getAccessorEngine();
+		Injector.setCompileThreshold(2);
+	}
+
+	@After
+	public void restore() {
+		Injector.setCompileThreshold(this.threshold);
+		ObjectFactory.setAccessorEngine(this.engine);
+	}
+
+	@Test
+	public void constructorFailuresAreTheSameOnceCompiled() {
+		ObjectFactory.setAccessorEngine(AccessorEngine.REFLECTIVE);
+		Throwable failure = this.assertSameFailures(DependsOnExploding.class);
+
+		assertEquals(Error.class, failure.getClass());
+		assertEquals("ObjectFactory.invokeConstructor got exception", failure.getMessage());
+	}
+
+	@Test
+	public void constructorFailuresAreTheSameOnceCompiledWithMethodHandles() {
+		ObjectFactory.setAccessorEngine(AccessorEngine.METHOD_HANDLE);
+		Throwable failure = this.assertSameFailures(ExplodingReflectively.class);
+
+		assertEquals(Error.class, failure.getClass());
+		assertEquals(IllegalStateException.class, failure.getCause().getClass());
+	}
+
+	@Test
+	public void initializerFailuresAreTheSameOnceCompiled() {
+		Throwable failure = this.assertSameFailures(FailingInitializer.class);
+
+		assertEquals(InjectionException.class, failure.getClass());
+		assertTrue(failure.getMessage(), failure.getMessage().startsWith("Failed calling method initialize of "));
+	}
+
+	@Test
+	public void compiledFactoriesGenerateCompleteObjects() {
+		for (int i = 0; i < ATTEMPTS; i++) {
+			Chain chain = Injector.generateObjectForClass(Chain.class);
+
+			assertNotNull(chain.leaf);
+			assertTrue(chain.initialized);
+		}
+
+		assertNotNull(InjectionPlan.forClass(Chain.class).getCompiledFactory());
+	}
+
+	/**
+	 * Generates objects of the class until it is compiled and after, checking that each
+	 * attempt fails with the same exceptions.
+	 *
+	 * @return the failure of the first attempt.
+	 */
+	private Throwable assertSameFailures(Class<?> clazz) {
+		Throwable first = null;
+
+		for (int i = 0; i < ATTEMPTS; i++) {
+			try {
+				Injector.generateObjectForClass(clazz);
+				fail("Generating " + clazz.getSimpleName() + " succeeded");
+			} catch (Throwable t) {
+				if (first == null) {
+					first = t;
+				} else {
+					assertSameChain(first, t);
+				}
+			}
+		}
+
+		return first;
+	}
+
+	private static void assertSameChain(Throwable expected, Throwable actual) {
+		while (expected != null) {
+			assertNotNull(actual);
+			assertEquals(expected.getClass(), actual.getClass());
+			assertEquals(expected.getMessage(), actual.getMessage());
+			expected = expected.getCause();
+			actual = actual.getCause();
+		}
+	}
+}
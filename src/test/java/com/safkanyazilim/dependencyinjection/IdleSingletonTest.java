@@ -0,0 +1,59 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class IdleSingletonTest {
+
+	@Singleton
+	@Retained(value = Retained.Policy.IDLE, idleMillis = 50)
+	public static class Evicted {
+	}
+
+	@Singleton
+	@Retained(value = Retained.Policy.IDLE, idleMillis = 50)
+	public static class EvictedOnPut {
+	}
+
+	@Singleton
+	public static class Trigger {
+	}
+
+	@Singleton
+	@Retained(value = Retained.Policy.IDLE, idleMillis = 5000)
+	public static class InUse {
+	}
+
+	@Test
+	public void idleSingletonsAreLetGo() throws InterruptedException {
+		Evicted evicted = Injector.generateObjectForClass(Evicted.class);
+
+		Thread.sleep(150);
+		Scope.root().evictIdleSingletons();
+
+		assertNotSame(evicted, Injector.generateObjectForClass(Evicted.class));
+	}
+
+	@Test
+	public void idleSingletonsAreLetGoWhenSingletonsArePut() throws InterruptedException {
+		EvictedOnPut evicted = Injector.generateObjectForClass(EvictedOnPut.class);
+
+		Thread.sleep(150);
+		Injector.generateObjectForClass(Trigger.class);
+
+		assertNotSame(evicted, Injector.generateObjectForClass(EvictedOnPut.class));
+	}
+
+	@Test
+	public void requestedSingletonsAreKept() throws InterruptedException {
+		InUse inUse = Injector.generateObjectForClass(InUse.class);
+
+		for (int i = 0; i < 3; i++) {
+			Thread.sleep(20);
+			Scope.root().evictIdleSingletons();
+			assertSame(inUse, Injector.generateObjectForClass(InUse.class));
+		}
+	}
+}
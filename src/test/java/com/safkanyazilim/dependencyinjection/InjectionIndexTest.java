@@ -0,0 +1,100 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InjectionIndexTest {
+
+	public interface Service {
+	}
+
+	public static class FirstService implements Service {
+	}
+
+	public static class SecondService implements Service {
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void bindingsAreLoaded() throws IOException {
+		InjectionIndex index = this.load(binding(Service.class, FirstService.class));
+
+		assertEquals(Collections.<Class<?>, Class<?>>singletonMap(Service.class, FirstService.class), index.getBindings());
+	}
+
+	@Test
+	public void repeatedBindingsAreLoadedOnce() throws IOException {
+		InjectionIndex index = this.load(binding(Service.class, FirstService.class), binding(Service.class, FirstService.class));
+
+		assertEquals(Collections.<Class<?>, Class<?>>singletonMap(Service.class, FirstService.class), index.getBindings());
+	}
+
+	@Test
+	public void conflictingBindingsFailToLoad() throws IOException {
+		try {
+			this.load(binding(Service.class, FirstService.class), binding(Service.class, SecondService.class));
+			fail("Conflicting bindings were loaded");
+		} catch (InjectionException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("is bound to both " + FirstService.class.getName()
+																+ " and " + SecondService.class.getName()));
+		}
+	}
+
+	private static String binding(Class<?> clazz, Class<?> implementation) {
+		return "binding " + clazz.getName() + " " + implementation.getName() + "\n";
+	}
+
+	/**
+	 * Loads an index file per given content, each in its own directory on the class path.
+	 */
+	private InjectionIndex load(String... contents) throws IOException {
+		URL[] urls = new URL[contents.length];
+
+		for (int i = 0; i < contents.length; i++) {
+			File directory = this.folder.newFolder();
+			File file = new File(directory, InjectionIndex.RESOURCE_NAME);
+			file.getParentFile().mkdirs();
+
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+			try {
+				writer.write(contents[i]);
+			} finally {
+				writer.close();
+			}
+
+			urls[i] = directory.toURI().toURL();
+		}
+
+		// Only the index files written here are visible; classes still come from the class
+		// loader of the test.
+		URLClassLoader classLoader = new URLClassLoader(urls, null) {
+			@Override
+			protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+				return Class.forName(name, resolve, InjectionIndexTest.class.getClassLoader());
+			}
+		};
+
+		try {
+			return InjectionIndex.load(classLoader);
+		} finally {
+			classLoader.close();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrInjectionListenerTest {
+
+	public static class SlowToConstruct {
+		public SlowToConstruct() throws InterruptedException {
+			Thread.sleep(50);
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void eventsLastAsLongAsTheOperation() throws IOException {
+		List<RecordedEvent> events = this.record("com.safkanyazilim.dependencyinjection.ConstructorInvoked",
+												 new JfrInjectionListener());
+
+		assertEquals(1, events.size());
+		assertTrue(events.get(0).getDuration().toMillis() >= 45);
+		assertNull(events.get(0).getStackTrace());
+	}
+
+	@Test
+	public void eventsAreEmittedOnceWithSeveralListeners() throws IOException {
+		List<RecordedEvent> events = this.record("com.safkanyazilim.dependencyinjection.ObjectGenerated",
+												 new JfrInjectionListener(), new JfrInjectionListener());
+
+		assertEquals(1, events.size());
+		assertTrue(events.get(0).getDuration().toMillis() >= 45);
+	}
+
+	/**
+	 * Generates a SlowToConstruct with the listeners registered, and returns the events of
+	 * the given name recorded for it.
+	 */
+	private List<RecordedEvent> record(String name, InjectionListener... listeners) throws IOException {
+		File file = new File(this.folder.getRoot(), "recording.jfr");
+		Recording recording = new Recording();
+
+		try {
+			recording.enable(name).withThreshold(Duration.ZERO);
+			recording.start();
+
+			for (InjectionListener listener : listeners) {
+				Injector.addInjectionListener(listener);
+			}
+
+			try {
+				Injector.generateObjectForClass(SlowToConstruct.class);
+			} finally {
+				for (InjectionListener listener : listeners) {
+					Injector.removeInjectionListener(listener);
+				}
+			}
+
+			recording.stop();
+			recording.dump(file.toPath());
+		} finally {
+			recording.close();
+		}
+
+		List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+			if (event.getEventType().getName().equals(name)
+					&& event.getClass("objectClass").getName().equals(SlowToConstruct.class.getName())) {
+				events.add(event);
+			}
+		}
+
+		return events;
+	}
+}
@@ -0,0 +1,81 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MethodHandleAccessorsTest {
+
+	public static class Service {
+	}
+
+	public static class WithStaticDependency {
+		@Dependency
+		public static Service service;
+
+		@Dependency
+		public Service instanceService;
+	}
+
+	private AccessorEngine engine;
+
+	private int threshold;
+
+	@Before
+	public void remember() {
+		this.engine = ObjectFactory.getAccessorEngine();
+		this.threshold = Injector.getCompileThreshold();
+	}
+
+	@After
+	public void restore() {
+		ObjectFactory.setAccessorEngine(this.engine);
+		Injector.setCompileThreshold(this.threshold);
+	}
+
+	@Test
+	public void staticDependencyFieldsAreInjectedReflectively() {
+		this.assertStaticFieldInjected(AccessorEngine.REFLECTIVE);
+	}
+
+	@Test
+	public void staticDependencyFieldsAreInjectedThroughHandles() {
+		this.assertStaticFieldInjected(AccessorEngine.METHOD_HANDLE);
+	}
+
+	@Test
+	public void staticDependencyFieldsAreInjectedByCompiledFactories() {
+		Injector.setCompileThreshold(2);
+
+		for (int i = 0; i < 4; i++) {
+			this.assertStaticFieldInjected(AccessorEngine.METHOD_HANDLE);
+		}
+	}
+
+	@Test
+	public void setterHandlesOfStaticFieldsIgnoreTheObject() throws Throwable {
+		Service service = new Service();
+
+		MethodHandleAccessors.setterHandle(WithStaticDependency.class.getField("service")).invokeExact((Object)null, (Object)service);
+
+		assertSame(service, WithStaticDependency.service);
+	}
+
+	private void assertStaticFieldInjected(AccessorEngine engine) {
+		ObjectFactory.setAccessorEngine(engine);
+		WithStaticDependency.service = null;
+
+		WithStaticDependency object = Injector.generateObjectForClass(WithStaticDependency.class);
+
+		assertNotNull(WithStaticDependency.service);
+		assertNotNull(object.instanceService);
+
+		WithStaticDependency.service = null;
+		Injector.satisfyDependencies(new WithStaticDependency());
+
+		assertNotNull(WithStaticDependency.service);
+	}
+}
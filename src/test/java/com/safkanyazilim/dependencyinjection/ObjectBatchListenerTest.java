@@ -0,0 +1,102 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ObjectBatchListenerTest {
+
+	public static class Part {
+	}
+
+	public static class Assembly {
+		@Dependency
+		public Part part;
+	}
+
+	/**
+	 * Counts the notifications about Assembly objects.
+	 */
+	private static class CountingListener implements InjectionListener {
+
+		private final AtomicInteger generated = new AtomicInteger();
+
+		private final AtomicInteger satisfied = new AtomicInteger();
+
+		private final AtomicInteger constructed = new AtomicInteger();
+
+		@Override
+		public void objectGenerated(Class<?> clazz, long nanos) {
+			if (clazz == Assembly.class) {
+				this.generated.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void dependenciesSatisfied(Class<?> clazz, long nanos) {
+			if (clazz == Assembly.class) {
+				this.satisfied.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void constructorInvoked(Class<?> clazz, long nanos) {
+			if (clazz == Assembly.class) {
+				this.constructed.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void initializerInvoked(Class<?> clazz, String methodName, long nanos) {
+		}
+
+		@Override
+		public void singletonLookup(Class<?> clazz, boolean hit) {
+		}
+	}
+
+	private CountingListener listener;
+
+	@Before
+	public void addListener() {
+		this.listener = new CountingListener();
+		Injector.addInjectionListener(this.listener);
+	}
+
+	@After
+	public void removeListener() {
+		Injector.removeInjectionListener(this.listener);
+	}
+
+	@Test
+	public void listenersSeeEveryObjectOfABatch() {
+		Injector.generateObjectsForClass(Assembly.class, 10);
+
+		this.assertCounts(10);
+	}
+
+	@Test
+	public void listenersSeeEveryObjectOfAParallelBatch() {
+		Injector.generateObjectsForClass(Assembly.class, 200, ForkJoinPool.commonPool());
+
+		this.assertCounts(200);
+	}
+
+	@Test
+	public void listenersSeeEveryObjectOfAStream() {
+		assertEquals(10, Injector.streamObjectsForClass(Assembly.class, 10).toArray().length);
+
+		this.assertCounts(10);
+	}
+
+	private void assertCounts(int count) {
+		assertEquals(count, this.listener.constructed.get());
+		assertEquals(count, this.listener.satisfied.get());
+		assertEquals(count, this.listener.generated.get());
+	}
+}
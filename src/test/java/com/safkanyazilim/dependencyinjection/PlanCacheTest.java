@@ -0,0 +1,120 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PlanCacheTest {
+
+	public static class Leaf {
+	}
+
+	public static class Cached {
+		@Dependency
+		public Leaf leaf;
+
+		@Initializer
+		public void initialize() {
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File previousFile;
+
+	private File file;
+
+	@Before
+	public void openCache() throws IOException {
+		this.previousFile = Injector.getPlanCacheFile();
+		this.file = new File(this.folder.getRoot(), "plans");
+
+		Injector.setPlanCacheFile(this.file);
+		PlanCache.members(Cached.class);
+		Injector.savePlanCache();
+	}
+
+	@After
+	public void restoreCache() {
+		Injector.setPlanCacheFile(this.previousFile);
+	}
+
+	@Test
+	public void entriesAreBoundByName() throws IOException {
+		byte[] saved = Files.readAllBytes(this.file.toPath());
+
+		Injector.setPlanCacheFile(this.file);
+		assertMembers(PlanCache.members(Cached.class));
+		Injector.savePlanCache();
+
+		assertArrayEquals(saved, Files.readAllBytes(this.file.toPath()));
+	}
+
+	@Test
+	public void entriesWithAnotherHashAreRebuilt() throws IOException {
+		byte[] saved = Files.readAllBytes(this.file.toPath());
+		byte[] stale = saved.clone();
+
+		// The hash follows the class name, the length of the entry and the length of the hash.
+		stale[indexOf(stale, Cached.class.getName().getBytes("UTF-8")) + Cached.class.getName().length() + 6] ^= 1;
+		Files.write(this.file.toPath(), stale);
+
+		Injector.setPlanCacheFile(this.file);
+		assertMembers(PlanCache.members(Cached.class));
+		Injector.savePlanCache();
+
+		assertArrayEquals(saved, Files.readAllBytes(this.file.toPath()));
+	}
+
+	@Test
+	public void entriesWhoseMembersCanNotBeBoundAreRebuilt() throws IOException {
+		byte[] saved = Files.readAllBytes(this.file.toPath());
+		byte[] stale = saved.clone();
+
+		// The same hash, with a field which does not exist.
+		stale[indexOf(stale, "leaf".getBytes("UTF-8"))] = 'x';
+		Files.write(this.file.toPath(), stale);
+
+		Injector.setPlanCacheFile(this.file);
+		assertMembers(PlanCache.members(Cached.class));
+		Injector.savePlanCache();
+
+		assertArrayEquals(saved, Files.readAllBytes(this.file.toPath()));
+	}
+
+	private static void assertMembers(InjectionPlan.Members members) {
+		assertEquals(1, members.dependencyFields.length);
+		assertEquals("leaf", members.dependencyFields[0].getName());
+		assertEquals(Leaf.class, members.dependencyTypes[0]);
+		assertEquals(1, members.initializers.length);
+		assertEquals("initialize", members.initializers[0].getName());
+	}
+
+	private static int indexOf(byte[] bytes, byte[] part) {
+		for (int i = 0; i + part.length <= bytes.length; i++) {
+			boolean found = true;
+
+			for (int j = 0; j < part.length && found; j++) {
+				found = bytes[i + j] == part[j];
+			}
+
+			if (found) {
+				return i;
+			}
+		}
+
+		fail("Not found in the cache file");
+		return -1;
+	}
+}
@@ -0,0 +1,76 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetainedSizesTest {
+
+	private static final int ENTRIES = 1000;
+
+	public static class Tables {
+		final Map<Integer, long[]> map = new HashMap<Integer, long[]>();
+
+		final List<long[]> list = new ArrayList<long[]>();
+	}
+
+	public static class Opaque {
+		final AtomicReference<long[]> reference = new AtomicReference<long[]>(new long[ENTRIES]);
+	}
+
+	private Scope scope;
+
+	@Before
+	public void openScope() {
+		this.scope = Scope.open();
+	}
+
+	@After
+	public void closeScope() {
+		this.scope.close();
+	}
+
+	@Test
+	public void mapsAndCollectionsAreFollowed() {
+		Tables tables = new Tables();
+
+		for (int i = 0; i < ENTRIES; i++) {
+			tables.map.put(Integer.valueOf(i + 1000), new long[1]);
+			tables.list.add(new long[1]);
+		}
+
+		this.scope.mapClassToObject(Tables.class, tables);
+
+		RetainedSizeReport report = this.scope.estimateRetainedSizes();
+		long size = report.getRetainedSizes().get(Tables.class).longValue();
+
+		// At least the arrays, 24 bytes each, and the entries of the map.
+		assertTrue("size " + size, size >= 2 * ENTRIES * 24 + ENTRIES * 32);
+		assertNull(report.getUnfollowedClasses().get(Tables.class));
+	}
+
+	@Test
+	public void objectsWhichCanNotBeFollowedAreReported() {
+		this.scope.mapClassToObject(Opaque.class, new Opaque());
+
+		RetainedSizeReport report = this.scope.estimateRetainedSizes();
+
+		if (report.getRetainedSizes().get(Opaque.class).longValue() < ENTRIES * 8) {
+			assertEquals(Collections.<Class<?>>singleton(AtomicReference.class), report.getUnfollowedClasses().get(Opaque.class));
+		} else {
+			// The fields of the JDK classes can be read, as on Java 8.
+			assertNull(report.getUnfollowedClasses().get(Opaque.class));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScopeFreezeTest {
+
+	public interface Service {
+	}
+
+	public static class ServiceImpl implements Service {
+	}
+
+	public static class Configuration {
+	}
+
+	@Singleton
+	public static class Catalog {
+	}
+
+	private Scope scope;
+
+	@Before
+	public void openScope() {
+		this.scope = Scope.open();
+	}
+
+	@After
+	public void closeScope() {
+		this.scope.close();
+	}
+
+	@Test
+	public void frozenScopesKeepTheirMappings() {
+		Configuration configuration = new Configuration();
+
+		this.scope.mapClassToClass(Service.class, ServiceImpl.class);
+		this.scope.mapClassToObject(Configuration.class, configuration);
+		this.scope.freeze();
+
+		assertTrue(this.scope.isFrozen());
+		assertTrue(this.scope.generateObjectForClass(Service.class) instanceof ServiceImpl);
+		assertSame(configuration, this.scope.generateObjectForClass(Configuration.class));
+	}
+
+	@Test
+	public void frozenScopesStillKeepSingletons() {
+		this.scope.freeze();
+
+		Catalog catalog = this.scope.generateObjectForClass(Catalog.class);
+
+		assertSame(catalog, this.scope.generateObjectForClass(Catalog.class));
+	}
+
+	@Test
+	public void changingAFrozenScopeFailsFast() {
+		this.scope.mapClassToClass(Service.class, ServiceImpl.class);
+		this.scope.freeze();
+
+		try {
+			this.scope.mapClassToClass(Service.class, ServiceImpl.class);
+			fail("mapClassToClass succeeded");
+		} catch (IllegalStateException expected) {
+		}
+
+		try {
+			this.scope.mapClassToObject(Configuration.class, new Configuration());
+			fail("mapClassToObject succeeded");
+		} catch (IllegalStateException expected) {
+		}
+
+		try {
+			this.scope.clearClassMap();
+			fail("clearClassMap succeeded");
+		} catch (IllegalStateException expected) {
+		}
+
+		try {
+			this.scope.clearObjectMap();
+			fail("clearObjectMap succeeded");
+		} catch (IllegalStateException expected) {
+		}
+
+		assertTrue(this.scope.generateObjectForClass(Service.class) instanceof ServiceImpl);
+	}
+
+	@Test
+	public void freezingAScopeDoesNotFreezeItsChildren() {
+		this.scope.freeze();
+
+		Scope child = this.scope.newChild();
+
+		try {
+			assertFalse(child.isFrozen());
+			child.mapClassToClass(Service.class, ServiceImpl.class);
+			assertTrue(child.generateObjectForClass(Service.class) instanceof ServiceImpl);
+		} finally {
+			child.close();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingletonConcurrencyTest {
+
+	private static final int THREADS = 16;
+
+	@Singleton
+	public static class SlowSingleton {
+		static final AtomicInteger constructions = new AtomicInteger();
+
+		public SlowSingleton() throws InterruptedException {
+			constructions.incrementAndGet();
+			Thread.sleep(50);
+		}
+	}
+
+	@Singleton
+	public static class Shared {
+		static final AtomicInteger constructions = new AtomicInteger();
+
+		public Shared() {
+			constructions.incrementAndGet();
+		}
+	}
+
+	public static class UserOne {
+		@Dependency
+		public Shared shared;
+	}
+
+	public static class UserTwo {
+		@Dependency
+		public Shared shared;
+	}
+
+	@Test
+	public void singletonIsConstructedExactlyOnceUnderContention() throws Exception {
+		List<Object> objects = this.generateConcurrently(new Class<?>[] { SlowSingleton.class });
+
+		assertEquals(1, SlowSingleton.constructions.get());
+
+		for (Object object : objects) {
+			assertSame(objects.get(0), object);
+		}
+	}
+
+	@Test
+	public void sharedDependencyIsConstructedExactlyOnceUnderContention() throws Exception {
+		List<Object> objects = this.generateConcurrently(new Class<?>[] { UserOne.class, UserTwo.class });
+
+		assertEquals(1, Shared.constructions.get());
+
+		for (Object object : objects) {
+			Shared shared = object instanceof UserOne ? ((UserOne)object).shared : ((UserTwo)object).shared;
+			assertSame(Injector.generateObjectForClass(Shared.class), shared);
+		}
+	}
+
+	/**
+	 * Generates objects of the classes, in turn, on as many threads released at once.
+	 */
+	private List<Object> generateConcurrently(final Class<?>[] classes) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+		try {
+			for (int i = 0; i < THREADS; i++) {
+				final Class<?> clazz = classes[i % classes.length];
+
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						start.await();
+						return Injector.generateObjectForClass(clazz);
+					}
+				}));
+			}
+
+			start.countDown();
+
+			List<Object> objects = new ArrayList<Object>();
+
+			for (Future<Object> future : futures) {
+				objects.add(future.get(30, TimeUnit.SECONDS));
+			}
+
+			return objects;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class SingletonInitializationTest {
+
+	@Singleton
+	public static class Client {
+		static final CountDownLatch initializing = new CountDownLatch(1);
+
+		@Dependency
+		public Provider<Server> server;
+
+		public Server initializedServer;
+
+		@Initializer
+		public void initialize() throws InterruptedException {
+			initializing.countDown();
+			Thread.sleep(200);
+			this.initializedServer = this.server.get();
+		}
+	}
+
+	@Singleton
+	public static class Server {
+		@Dependency
+		public Client client;
+	}
+
+	@Singleton
+	public static class SlowlyInitialized {
+		static final CountDownLatch initializing = new CountDownLatch(1);
+
+		public volatile boolean initialized;
+
+		@Initializer
+		public void initialize() throws InterruptedException {
+			initializing.countDown();
+			Thread.sleep(200);
+			this.initialized = true;
+		}
+	}
+
+	@Singleton
+	public static class EagerClient {
+		static final CountDownLatch constructing = new CountDownLatch(1);
+
+		@Dependency
+		public EagerClient(Provider<EagerServer> server) throws InterruptedException {
+			constructing.countDown();
+			Thread.sleep(300);
+			server.get();
+		}
+	}
+
+	@Singleton
+	public static class EagerServer {
+		@Dependency
+		public EagerClient client;
+	}
+
+	@Test
+	public void singletonsBreakingTheirCycleWithAProviderAreGeneratedOnTwoThreads() throws Exception {
+		Generation client = new Generation(Client.class);
+		client.start();
+		assertTrue(Client.initializing.await(10, TimeUnit.SECONDS));
+
+		Generation server = new Generation(Server.class);
+		server.start();
+
+		client.join(10000);
+		server.join(10000);
+
+		assertFalse("deadlock", client.isAlive() || server.isAlive());
+		client.assertSucceeded();
+		server.assertSucceeded();
+
+		Client clientObject = (Client)client.object.get();
+		Server serverObject = (Server)server.object.get();
+
+		assertSame(serverObject, clientObject.initializedServer);
+		assertSame(clientObject, serverObject.client);
+		assertSame(clientObject, Injector.generateObjectForClass(Client.class));
+		assertSame(serverObject, Injector.generateObjectForClass(Server.class));
+	}
+
+	@Test
+	public void otherThreadsWaitUntilTheInitializersOfASingletonHaveBeenCalled() throws Exception {
+		Generation first = new Generation(SlowlyInitialized.class);
+		first.start();
+		assertTrue(SlowlyInitialized.initializing.await(10, TimeUnit.SECONDS));
+
+		SlowlyInitialized object = Injector.generateObjectForClass(SlowlyInitialized.class);
+
+		assertTrue(object.initialized);
+
+		first.join(10000);
+		first.assertSucceeded();
+		assertSame(object, first.object.get());
+	}
+
+	@Test
+	public void singletonsWaitingForEachOtherOnTwoThreadsFailInsteadOfHanging() throws Exception {
+		Generation client = new Generation(EagerClient.class);
+		client.start();
+		assertTrue(EagerClient.constructing.await(10, TimeUnit.SECONDS));
+
+		Generation server = new Generation(EagerServer.class);
+		server.start();
+
+		client.join(10000);
+		server.join(10000);
+
+		assertFalse("deadlock", client.isAlive() || server.isAlive());
+
+		Throwable failure = client.failure.get() != null ? client.failure.get() : server.failure.get();
+
+		// Thrown from the constructor of EagerClient, it is wrapped as ObjectFactory does.
+		while (failure != null && !(failure instanceof InjectionException)) {
+			failure = failure.getCause();
+		}
+
+		assertNotNull(failure);
+		assertTrue(failure.getMessage(), failure.getMessage().contains("EagerServer -> ")
+				   && failure.getMessage().contains("need each other"));
+	}
+
+	private static final class Generation extends Thread {
+		private final Class<?> clazz;
+
+		final AtomicReference<Object> object = new AtomicReference<Object>();
+
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Generation(Class<?> clazz) {
+			this.clazz = clazz;
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.object.set(Injector.generateObjectForClass(this.clazz));
+			} catch (Throwable t) {
+				this.failure.set(t);
+			}
+		}
+
+		void assertSucceeded() {
+			if (this.failure.get() != null) {
+				throw new AssertionError(this.failure.get());
+			}
+
+			assertNotNull(this.object.get());
+		}
+	}
+}
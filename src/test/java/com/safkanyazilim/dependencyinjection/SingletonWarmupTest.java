@@ -0,0 +1,55 @@
+package com.safkanyazilim.dependencyinjection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class SingletonWarmupTest {
+
+	@Singleton
+	public static class Early {
+	}
+
+	@Singleton
+	public static class Late {
+		@Dependency
+		public Early early;
+	}
+
+	@Singleton
+	public static class Base {
+	}
+
+	@Singleton
+	public static class Top {
+		@Dependency
+		public Base base;
+	}
+
+	@Test
+	public void singletonsAreConstructedAfterTheirDependencies() {
+		WarmupReport report = Injector.warmUpSingletons(Collections.<Class<?>>singletonList(Top.class));
+
+		assertEquals(Arrays.<Class<?>>asList(Base.class, Top.class), Arrays.asList(report.getConstructionNanos().keySet().toArray()));
+		assertEquals(Arrays.<Class<?>>asList(Base.class, Top.class), report.getCriticalPath());
+		assertSame(Injector.generateObjectForClass(Base.class), Injector.generateObjectForClass(Top.class).base);
+	}
+
+	@Test
+	public void singletonsConstructedBeforeAreReportedWithZeroTime() {
+		Early early = Injector.generateObjectForClass(Early.class);
+
+		WarmupReport report = Injector.warmUpSingletons(Collections.<Class<?>>singletonList(Late.class));
+
+		assertEquals(Long.valueOf(0), report.getConstructionNanos().get(Early.class));
+		assertTrue(report.getConstructionNanos().containsKey(Late.class));
+		assertFalse(report.getCriticalPath().contains(Early.class));
+		assertSame(early, Injector.generateObjectForClass(Late.class).early);
+	}
+}